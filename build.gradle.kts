@@ -4,6 +4,7 @@ plugins {
     id("io.spring.dependency-management") version "1.1.6"
     id("java")
     id("jacoco")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 
@@ -28,8 +29,19 @@ dependencies {
 
     implementation("org.springframework.boot:spring-boot-starter-log4j2")
 
+    // Метрики: /actuator/prometheus
+    implementation("org.springframework.boot:spring-boot-starter-actuator"){
+        exclude(group = "org.springframework.boot", module = "spring-boot-starter-logging")
+    }
+    implementation("io.micrometer:micrometer-registry-prometheus")
+
+    // Кеш ответов GET /api/socks
+    implementation("com.github.ben-manes.caffeine:caffeine")
+
     implementation("org.slf4j:slf4j-api:1.7.36")
     implementation("org.apache.logging.log4j:log4j-slf4j-impl:2.17.2")
+    // Асинхронные логгеры log4j2 на кольцевом буфере
+    implementation("com.lmax:disruptor:3.4.4")
 
 
 
@@ -37,8 +49,14 @@ dependencies {
 
     annotationProcessor("org.projectlombok:lombok:1.18.28")
 
-    // PostgreSQL Driver
-    runtimeOnly("org.postgresql:postgresql")
+    // PostgreSQL Driver, CopyManager нужен при компиляции
+    implementation("org.postgresql:postgresql")
+
+    // Потоковая распаковка загрузок .csv.zst
+    implementation("com.github.luben:zstd-jni:1.5.5-11")
+
+    // Версионные миграции схемы
+    implementation("org.flywaydb:flyway-core")
 
     // Swagger/OpenAPI
     implementation("org.springdoc:springdoc-openapi-ui:1.6.14")
@@ -47,6 +65,8 @@ dependencies {
     testImplementation("org.springframework.boot:spring-boot-starter-test"){
         exclude(group = "org.springframework.boot", module = "spring-boot-starter-logging")
     }
+    // Подсчет SQL запросов: метрика запросов к БД на HTTP запрос и тесты
+    implementation("net.ttddyy:datasource-proxy:1.9")
 }
 
 
@@ -77,4 +97,8 @@ jacoco {
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+jmh {
+    jmhVersion = "1.37"
+}
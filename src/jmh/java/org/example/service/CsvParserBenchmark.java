@@ -0,0 +1,89 @@
+package org.example.service;
+
+import org.example.config.ColorProperties;
+import org.example.dto.SockDto;
+import org.example.dto.StockDto;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Сравнение разбора по байтам с прежней реализацией на readLine/split/parseInt.
+// Запуск: ./gradlew jmh
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvParserBenchmark {
+
+    private static final String[] COLORS = {"red", "blue", "green", "black", "white", "черный", "серый", "желтый"};
+
+    @Param({"100000"})
+    private int rows;
+
+    private byte[] content;
+    private final CsvParserService csvParserService = new CsvParserService(new ColorProperties());
+
+    @Setup
+    public void setUp() {
+        StringBuilder csv = new StringBuilder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < rows; i++) {
+            csv.append(COLORS[random.nextInt(COLORS.length)]).append(',')
+                    .append(random.nextInt(101)).append(',')
+                    .append(random.nextInt(1, 10_000)).append('\n');
+        }
+        content = csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void byteParser(Blackhole blackhole) throws IOException {
+        csvParserService.parseCsv(new ByteArrayInputStream(content), 5000, blackhole::consume);
+    }
+
+    @Benchmark
+    public void readLineSplit(Blackhole blackhole) throws IOException {
+        List<StockDto> chunk = new ArrayList<>(5000);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunk.add(legacyParseLine(line));
+                if (chunk.size() == 5000) {
+                    blackhole.consume(chunk);
+                    chunk = new ArrayList<>(5000);
+                }
+            }
+        }
+        blackhole.consume(chunk);
+    }
+
+    // Прежняя реализация CsvParserService.getSockDto
+    private static StockDto legacyParseLine(String line) {
+        String[] columns = line.split(",");
+        if (columns.length != 3) {
+            throw new IllegalArgumentException(" Ожидалось 3 столбца, но получено " + columns.length);
+        }
+        try {
+            SockDto sockDto = new SockDto();
+            sockDto.setColor(columns[0]);
+            sockDto.setCottonPercentage(Integer.parseInt(columns[1]));
+
+            StockDto stockDto = new StockDto();
+            stockDto.setSockDto(sockDto);
+            stockDto.setQuantity(Integer.parseInt(columns[2]));
+            return stockDto;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Позиция : " + line);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.service;
+
+import org.example.dto.SockKey;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Стоимость логирования списания партии из 10 позиций: прежние 4 строки info на позицию с конкатенацией
+// против debug на позицию и одной итоговой строки info, с синхронными и асинхронными логгерами.
+// Очередь асинхронных логгеров блокирующая, как в приложении: события не отбрасываются и не завышают результат.
+// Лог пишется в build/jmh-logs/benchmark.log.
+// Запуск: ./gradlew jmhJar && java -jar build/libs/*-jmh.jar LoggingBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+public class LoggingBenchmark {
+
+    private static final String CONFIG = "-Dlog4j2.configurationFile=log4j2-benchmark.xml";
+    private static final String SYNC = "-Dlog4j2.contextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector";
+    private static final String ASYNC = "-Dlog4j2.contextSelector=org.apache.logging.log4j.core.async.AsyncLoggerContextSelector";
+
+    private static final Logger log = LoggerFactory.getLogger(LoggingBenchmark.class);
+
+    // legacy - как было в removeStock, summary - как сейчас
+    @Param({"legacy", "summary"})
+    private String style;
+
+    private final List<SockKey> items = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 10; i++) {
+            items.add(new SockKey("red", i * 10));
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {CONFIG, SYNC})
+    public int syncLoggers() {
+        return removeStock();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {CONFIG, ASYNC})
+    public int asyncLoggers() {
+        return removeStock();
+    }
+
+    private int removeStock() {
+        int quantity = 0;
+        boolean legacy = "legacy".equals(style);
+        for (SockKey item : items) {
+            quantity += item.cottonPercentage();
+            if (legacy) {
+                log.info("GET SOCK ENTITY " + item);
+                log.info("Товар: {} найден в БД", item.color());
+                log.info("Текущее количество товара {} на складе: {}", item, quantity);
+                log.info("Количество товара {} успешно обновлено", item);
+            } else {
+                log.debug("Товар: {} найден в БД", item.color());
+            }
+        }
+        if (!legacy) {
+            log.info("Количество товара успешно обновлено, позиций: {}", items.size());
+        }
+        return quantity;
+    }
+}
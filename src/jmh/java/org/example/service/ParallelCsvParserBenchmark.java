@@ -0,0 +1,61 @@
+package org.example.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Масштабирование параллельного разбора по числу потоков на файле ~30 МБ.
+// Ожидается рост близкий к линейному до числа ядер машины.
+// Запуск: ./gradlew jmhJar && java -jar build/libs/*-jmh.jar ParallelCsvParserBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelCsvParserBenchmark {
+
+    private static final String[] COLORS = {"red", "blue", "green", "black", "white", "черный", "серый", "желтый"};
+
+    @Param({"2000000"})
+    private int rows;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private Path file;
+    private ForkJoinPool pool;
+    private ParallelCsvParserService parallelCsvParserService;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < rows; i++) {
+            csv.append(COLORS[random.nextInt(COLORS.length)]).append(',')
+                    .append(random.nextInt(101)).append(',')
+                    .append(random.nextInt(1, 10_000)).append('\n');
+        }
+        file = Files.createTempFile("socks-benchmark-", ".csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+        pool = new ForkJoinPool(threads);
+        parallelCsvParserService = new ParallelCsvParserService(pool);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ParallelCsvParserService.Result parallelParse() throws IOException {
+        return parallelCsvParserService.parse(file);
+    }
+}
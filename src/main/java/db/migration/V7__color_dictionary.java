@@ -0,0 +1,113 @@
+package db.migration;
+
+import org.example.config.ColorProperties;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Словарь цветов: товар хранит целый color_id вместо строки, поиск, уникальный индекс и соединения идут по int.
+// Цвета приводятся к политике нормализации по умолчанию (socks.color: trim, lower-case) тем же
+// ColorProperties.normalize, что и в приложении: у String.trim и toLowerCase(Locale.ROOT) нет точного аналога
+// в SQL - btrim отбрасывает только перечисленные символы, а lower зависит от правил сортировки БД.
+// Товары, совпавшие после нормализации, сливаются в товар с минимальным id, как в V2
+public class V7__color_dictionary extends BaseJavaMigration {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String CREATE_COLOR = """
+            CREATE TABLE color (
+                id   SERIAL       PRIMARY KEY,
+                name VARCHAR(255) NOT NULL,
+                CONSTRAINT uk_color_name UNIQUE (name)
+            )
+            """;
+
+    // Исходный цвет товара и его нормализованное имя
+    private static final String CREATE_COLOR_MIGRATION =
+            "CREATE TEMPORARY TABLE color_migration (color VARCHAR(255) PRIMARY KEY, name VARCHAR(255) NOT NULL)";
+
+    private static final String INSERT_COLOR_MIGRATION = "INSERT INTO color_migration (color, name) VALUES (?, ?)";
+
+    private static final String[] MIGRATE = {
+            "INSERT INTO color (name) SELECT DISTINCT name FROM color_migration ORDER BY 1",
+
+            "ALTER TABLE sock_entity ADD COLUMN color_id INTEGER REFERENCES color (id)",
+
+            """
+            UPDATE sock_entity s
+            SET color_id = c.id
+            FROM color_migration m
+            JOIN color c ON c.name = m.name
+            WHERE s.color = m.color
+            """,
+
+            // Остаток дублей складываю в товар с минимальным id, товар без остатка остается без остатка
+            """
+            UPDATE sock_entity s
+            SET quantity = t.total
+            FROM (SELECT MIN(id) AS keep_id, SUM(quantity) AS total
+                  FROM sock_entity
+                  GROUP BY color_id, cotton_percentage
+                  HAVING COUNT(*) > 1) t
+            WHERE s.id = t.keep_id
+            """,
+
+            """
+            DELETE FROM sock_entity s
+            USING sock_entity k
+            WHERE s.color_id = k.color_id
+              AND s.cotton_percentage = k.cotton_percentage
+              AND s.id > k.id
+            """,
+
+            """
+            ALTER TABLE sock_entity
+                DROP CONSTRAINT uk_sock_color_cotton,
+                DROP COLUMN color,
+                ADD CONSTRAINT uk_sock_color_cotton UNIQUE (color_id, cotton_percentage) INCLUDE (id)
+            """,
+
+            "DROP TABLE color_migration"
+    };
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_COLOR);
+            statement.execute(CREATE_COLOR_MIGRATION);
+            fillColorMigration(connection, statement);
+            for (String sql : MIGRATE) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static void fillColorMigration(Connection connection, Statement statement) throws SQLException {
+        ColorProperties policy = new ColorProperties();
+        List<String> colors = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery("SELECT DISTINCT color FROM sock_entity WHERE color IS NOT NULL")) {
+            while (rs.next()) {
+                colors.add(rs.getString(1));
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_COLOR_MIGRATION)) {
+            for (int i = 0; i < colors.size(); i++) {
+                insert.setString(1, colors.get(i));
+                insert.setString(2, policy.normalize(colors.get(i)));
+                insert.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "socks.aggregate-index")
+public class AggregateIndexProperties {
+
+    // GET /api/socks отвечает из памяти, а не SUM запросом в БД
+    private boolean enabled = false;
+}
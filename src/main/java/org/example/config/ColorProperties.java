@@ -0,0 +1,27 @@
+package org.example.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Locale;
+
+// Политика нормализации цвета: "Red", "red " и "red" - один товар, если включены обе настройки.
+// Миграция V7 привела существующие цвета к политике по умолчанию
+@Data
+@ConfigurationProperties(prefix = "socks.color")
+public class ColorProperties {
+
+    // Пробелы и управляющие символы по краям отбрасываются
+    private boolean trim = true;
+
+    // Цвет приводится к нижнему регистру
+    private boolean lowerCase = true;
+
+    public String normalize(String color) {
+        if (color == null) {
+            return null;
+        }
+        String normalized = trim ? color.trim() : color;
+        return lowerCase ? normalized.toLowerCase(Locale.ROOT) : normalized;
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "socks.export")
+public class ExportProperties {
+
+    // Строк, которые драйвер забирает из курсора за одно обращение к БД
+    private int fetchSize = 10_000;
+}
@@ -0,0 +1,25 @@
+package org.example.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "socks.group-commit")
+public class GroupCommitProperties {
+
+    // /income и /outcome собираются в пачки и фиксируются одной транзакцией
+    private boolean enabled = false;
+
+    // Сколько после первого запроса пачки ждать попутные запросы
+    private Duration maxDelay = Duration.ofMillis(2);
+
+    private int maxBatchSize = 256;
+
+    // Ограничение транзакции пачки, округляется до секунд. Вызов ждет свое движение max-delay + statement-timeout
+    private Duration statementTimeout = Duration.ofSeconds(5);
+
+    // Сколько запросов может ждать записи, дальше вызывающие потоки блокируются
+    private int queueCapacity = 4096;
+}
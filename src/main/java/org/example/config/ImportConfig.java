@@ -0,0 +1,97 @@
+package org.example.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.repositories.ColorDictionary;
+import org.example.repositories.CopyStockBulkWriter;
+import org.example.repositories.JpaStockBulkWriter;
+import org.example.repositories.SockRepository;
+import org.example.repositories.StockBulkWriter;
+import org.example.repositories.StockRepository;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+@Configuration
+@Slf4j
+public class ImportConfig {
+
+    // Свои пулы выше отключают пул Spring Boot по умолчанию, без него потоковые ответы (/movements, /export)
+    // шли бы в SimpleAsyncTaskExecutor - новый поток на каждый запрос. Размеры пула - spring.task.execution
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    // Отдельный пул для разбора CSV, что бы разбор шел параллельно с записью в БД
+    @Bean
+    public ThreadPoolTaskExecutor csvParserExecutor(ImportProperties importProperties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(importProperties.getParserThreads());
+        executor.setMaxPoolSize(importProperties.getParserThreads());
+        executor.setThreadNamePrefix("csv-parser-");
+        return executor;
+    }
+
+    // Пул фоновых задач импорта. Очередь небольшая: ожидающие задачи копятся в очередях клиентов, а не здесь
+    @Bean
+    public ThreadPoolTaskExecutor importJobExecutor(ImportProperties importProperties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(importProperties.getJobThreads());
+        executor.setMaxPoolSize(importProperties.getJobThreads());
+        executor.setQueueCapacity(importProperties.getJobThreads() * 16);
+        executor.setThreadNamePrefix("import-job-");
+        return executor;
+    }
+
+    // Пул параллельного разбора сегментов файла
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool csvParserPool(ImportProperties importProperties) {
+        int parallelism = importProperties.getParseParallelism() > 0
+                ? importProperties.getParseParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("csv-segment-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    // Запросы остатков и словаря цветов написаны для PostgreSQL, поэтому на другой БД приложение не стартует.
+    // jpa - запись без COPY, например если COPY не пропускает прокси соединений
+    @Bean
+    public StockBulkWriter stockBulkWriter(ImportProperties importProperties, DataSource dataSource, JdbcTemplate jdbcTemplate,
+                                           SockRepository sockRepository, StockRepository stockRepository,
+                                           ColorDictionary colorDictionary) {
+        String product = databaseProduct(dataSource);
+        if (!"PostgreSQL".equals(product)) {
+            throw new IllegalStateException("Поддерживается только PostgreSQL, БД приложения: " + product);
+        }
+        ImportProperties.BulkEngine engine = importProperties.getBulkEngine();
+        if (engine == ImportProperties.BulkEngine.AUTO) {
+            engine = ImportProperties.BulkEngine.COPY;
+        }
+        log.info("Движок массовой записи остатков: {}", engine);
+        if (engine == ImportProperties.BulkEngine.COPY) {
+            return new CopyStockBulkWriter(dataSource, jdbcTemplate, colorDictionary);
+        }
+        return new JpaStockBulkWriter(sockRepository, stockRepository, colorDictionary);
+    }
+
+    private static String databaseProduct(DataSource dataSource) {
+        try {
+            return JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Не удалось определить БД приложения", e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "socks.import")
+public class ImportProperties {
+
+    // Количество строк CSV в одной порции, порция пишется в БД целиком
+    private int chunkSize = 5000;
+
+    // Сколько разобранных порций может ждать записи. Ограничивает память, занимаемую одним импортом
+    private int queueCapacity = 2;
+
+    // Потоки для разбора файлов, один импорт занимает один поток
+    private int parserThreads = 4;
+
+    private CommitMode commitMode = CommitMode.CHUNK;
+
+    private ParseMode parseMode = ParseMode.STREAM;
+
+    // Потоки параллельного разбора, 0 - по числу ядер
+    private int parseParallelism = 0;
+
+    // Сколько ошибочных строк попадает в отчет режимов validate и apply-valid, остальные только считаются
+    private int maxReportedErrors = 1000;
+
+    // Потоки фоновых задач импорта. Каждая задача держит одно соединение с БД, остальные остаются запросам
+    private int jobThreads = 2;
+
+    // Клиенты (заголовок X-Tenant-Id) с собственным лимитом задач. Заголовок не аутентифицирован, поэтому
+    // любые другие значения, как и его отсутствие, делят лимит клиента default
+    private List<String> tenants = new ArrayList<>();
+
+    // Сколько задач одного клиента выполняется одновременно, остальные ждут своей очереди
+    private int tenantConcurrency = 1;
+
+    // Сколько задач одного клиента может ждать, дальше загрузка отклоняется
+    private int tenantQueueCapacity = 10;
+
+    // Сколько хранить состояние завершенных задач
+    private Duration jobRetention = Duration.ofHours(1);
+
+    // В commit-mode file строки файла после этого числа пишутся массовой записью с одним слиянием, 0 - никогда.
+    // В chunk не действует: каждая порция пишется одним upsert и фиксируется сразу
+    private int bulkThresholdRows = 50_000;
+
+    private BulkEngine bulkEngine = BulkEngine.AUTO;
+
+    // Движений в одной порции POST /api/socks/movements, порция применяется одной транзакцией
+    private int movementChunkSize = 1000;
+
+    // Каталог файлов для импорта с сервера (POST /api/admin/import), пусто - импорт с сервера отключен
+    private String directory = "";
+
+    public enum CommitMode {
+        // Каждая порция фиксируется своей транзакцией
+        CHUNK,
+        // Весь файл применяется одной транзакцией - либо целиком, либо ничего
+        FILE
+    }
+
+    public enum BulkEngine {
+        // COPY. Другие БД приложение не поддерживает, на них оно не стартует
+        AUTO,
+        // COPY в промежуточную таблицу и слияние одним проходом
+        COPY,
+        // Суммы в памяти и запись через репозитории, без COPY. Тоже только PostgreSQL
+        JPA
+    }
+
+    public enum ParseMode {
+        // Файл разбирается одним потоком порциями, порции пишутся пока разбирается следующая
+        STREAM,
+        // Файл сохраняется на диск и разбирается сегментами на всех ядрах, в БД пишутся суммы по товарам
+        PARALLEL
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Метрики сверх встроенных в Spring Boot. Время эндпоинтов (http.server.requests), методов репозиториев
+// (spring.data.repository.invocations) и ожидания соединения из пула (hikaricp.connections.acquire) Boot
+// пишет сам, процентили для них заданы в management.metrics.distribution. Здесь - число запросов к БД
+// на HTTP запрос: socks.db.statements с тегом uri
+@Configuration
+public class MetricsConfig {
+
+    public static final String STATEMENTS_METRIC = "socks.db.statements";
+
+    // DataSource оборачивается прокси, который считает выполненные запросы в потоке текущего HTTP запроса.
+    // Пакет JDBC считается одним запросом - это одно обращение к БД
+    @Bean
+    static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource) {
+                    return ProxyDataSourceBuilder.create(dataSource).name(beanName).listener(new StatementCountingListener()).build();
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<StatementMetricsFilter> statementMetricsFilter(MeterRegistry meterRegistry) {
+        FilterRegistrationBean<StatementMetricsFilter> registration = new FilterRegistrationBean<>(new StatementMetricsFilter(meterRegistry));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+
+    // Счетчик запросов потока. Запросы вне HTTP запроса (фоновый импорт, потоковые ответы) не считаются
+    static final class StatementCounter {
+
+        private static final ThreadLocal<int[]> COUNTER = new ThreadLocal<>();
+
+        static void start() {
+            COUNTER.set(new int[1]);
+        }
+
+        static int stop() {
+            int[] counter = COUNTER.get();
+            COUNTER.remove();
+            return counter == null ? 0 : counter[0];
+        }
+
+        static void increment() {
+            int[] counter = COUNTER.get();
+            if (counter != null) {
+                counter[0]++;
+            }
+        }
+    }
+
+    static final class StatementCountingListener implements QueryExecutionListener {
+
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            StatementCounter.increment();
+        }
+    }
+
+    // Тег uri - шаблон пути, как у http.server.requests. Счетчики по шаблону кешируются, что бы запись
+    // не искала метр в реестре на каждый запрос
+    @RequiredArgsConstructor
+    static final class StatementMetricsFilter extends OncePerRequestFilter {
+
+        private final MeterRegistry meterRegistry;
+        private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                throws ServletException, IOException {
+            StatementCounter.start();
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                int statements = StatementCounter.stop();
+                Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+                summaries.computeIfAbsent(uri, u -> DistributionSummary.builder(STATEMENTS_METRIC)
+                        .description("Запросов к БД на HTTP запрос")
+                        .tag("uri", u)
+                        .register(meterRegistry)).record(statements);
+            }
+        }
+    }
+}
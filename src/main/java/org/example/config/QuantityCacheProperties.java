@@ -0,0 +1,21 @@
+package org.example.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "socks.quantity-cache")
+public class QuantityCacheProperties {
+
+    // GET /api/socks отвечает из кеша, пока по цвету не было записей. Только для одного экземпляра приложения,
+    // как и индекс остатков. Одновременные одинаковые запросы объединяются в один запрос в БД и без кеша
+    private boolean enabled = false;
+
+    // Сколько ответов хранить, редко запрашиваемые вытесняются первыми
+    private long maximumSize = 10_000;
+
+    // Записи мимо этого экземпляра (другие экземпляры, SQL вручную) видны не позже чем через ttl
+    private Duration ttl = Duration.ofSeconds(30);
+}
@@ -0,0 +1,72 @@
+package org.example.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.dto.ImportMode;
+import org.example.dto.ImportReportDto;
+import org.example.service.ServerFileImportService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RequiredArgsConstructor
+@RestController
+@Slf4j
+@RequestMapping("/api/admin")
+@Tag(name = "Администрирование", description = "Служебные операции склада")
+public class AdminController {
+
+    private final ServerFileImportService serverFileImportService;
+
+    @PostMapping("/import")
+    @Operation(
+            summary = "Импорт партии товаров из файла на сервере",
+            description = "Файл берется из каталога socks.import.directory, путь указывается относительно него. " +
+                    "Формат и режимы те же, что у POST /api/socks/batch, но файл не загружается через multipart: " +
+                    "несжатый CSV разбирается прямо из отображения файла в память"
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "204", description = "Файл успешно обработан, остатки обновлены"),
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Файл обработан в режиме validate или apply-valid",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ImportReportDto.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Путь вне каталога импорта или импорт с сервера отключен",
+                    content = @Content(mediaType = "text/plain", schema = @Schema(type = "string"))
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Файл не найден",
+                    content = @Content(mediaType = "text/plain", schema = @Schema(type = "string"))
+            )
+    })
+    public ResponseEntity<?> importServerFile(
+            @Parameter(description = "Путь к файлу относительно каталога импорта", required = true)
+            @RequestParam("path") String path,
+            @Parameter(description = "apply, validate или apply-valid, как у POST /api/socks/batch")
+            @RequestParam(value = "mode", defaultValue = "apply") String mode) throws Exception {
+
+        ImportMode importMode = ImportMode.fromValue(mode);
+        ImportReportDto report = serverFileImportService.importFile(path, importMode);
+        if (importMode != ImportMode.APPLY) {
+            return ResponseEntity.ok(report);
+        }
+        log.info("Партия товаров из файла {} на сервере принята, строк: {}", path, report.getRowsApplied());
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -10,21 +10,33 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.dto.*;
-import org.example.service.CsvParserService;
+import org.example.service.ImportJobService;
+import org.example.service.MovementStreamService;
 import org.example.service.SockService;
+import org.example.service.StockExportService;
+import org.example.service.StockImportService;
 import org.example.service.StockService;
+import org.example.service.StockWriteBatcher;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 
 @RequiredArgsConstructor
 @RestController
@@ -34,10 +46,15 @@ import java.util.List;
 @Tag(name = "Управление товарами", description = "Эндпоинты для работы с товарами: списание, оприходование, изменение.")
 public class SockController {
 
-    private final CsvParserService csvParserService;
+    private static final String NDJSON = "application/x-ndjson";
 
     private final StockService stockService;
     private final SockService sockService;
+    private final StockImportService stockImportService;
+    private final StockWriteBatcher stockWriteBatcher;
+    private final ImportJobService importJobService;
+    private final MovementStreamService movementStreamService;
+    private final StockExportService stockExportService;
 
     @PutMapping("/{id}")
     @Operation(
@@ -85,7 +102,10 @@ public class SockController {
             )
     })
     public ResponseEntity<Void> updateSocks(@PathVariable Long id, @Valid @RequestBody UpdateSockDto sock) {
-        log.info("Получен запрос на обновление товара с id: {}, новый цвет: {}, новое содержание хлопка: {}", id, sock.getColor(), sock.getCottonPercentage());
+        // Три аргумента идут через varargs - без проверки уровня массив создавался бы и при выключенном debug
+        if (log.isDebugEnabled()) {
+            log.debug("Получен запрос на обновление товара с id: {}, новый цвет: {}, новое содержание хлопка: {}", id, sock.getColor(), sock.getCottonPercentage());
+        }
         sockService.updateSockEntity(id, sock);
         return ResponseEntity.noContent().build();
     }
@@ -114,9 +134,14 @@ public class SockController {
     })
     public ResponseEntity<Void> incomeSock(@RequestBody @Valid SearchStockDto searchStockDto) {
 
-        log.info("Получен запрос на добавление товара  цвет: {}, содержание хлопка: {}", searchStockDto.getColor(), searchStockDto.getCottonPercentage());
-        // Пока так, что бы переиспользовать метод и не создавать новый - запихиваю dto в List
-        stockService.addedStock(getStockDtoList(new ArrayList<>(List.of(searchStockDto))));
+        log.debug("Получен запрос на добавление товара  цвет: {}, содержание хлопка: {}", searchStockDto.getColor(), searchStockDto.getCottonPercentage());
+        if (stockWriteBatcher.isEnabled()) {
+            // Фиксируется одной транзакцией вместе с попутными запросами
+            stockWriteBatcher.income(searchStockDto);
+        } else {
+            // Пока так, что бы переиспользовать метод и не создавать новый - запихиваю dto в List
+            stockService.addedStock(getStockDtoList(new ArrayList<>(List.of(searchStockDto))));
+        }
 
         return ResponseEntity.noContent().build();
     }
@@ -155,16 +180,50 @@ public class SockController {
             )
     })
     public ResponseEntity<String> outcomeSock(@RequestBody @Valid SearchStockDto searchStockDto) {
-        log.info("Получен запрос на уменьшение количества товара  цвет: {}, содержание хлопка: {}", searchStockDto.getColor(), searchStockDto.getCottonPercentage());
-        // Пока так, что бы переиспользовать существующий метод и не создавать новый - запихиваю dto в List
-        stockService.removeStock(getStockDtoList(new ArrayList<>(List.of(searchStockDto))));
+        log.debug("Получен запрос на уменьшение количества товара  цвет: {}, содержание хлопка: {}", searchStockDto.getColor(), searchStockDto.getCottonPercentage());
+        if (stockWriteBatcher.isEnabled()) {
+            stockWriteBatcher.outcome(searchStockDto);
+        } else {
+            // Пока так, что бы переиспользовать существующий метод и не создавать новый - запихиваю dto в List
+            stockService.removeStock(getStockDtoList(new ArrayList<>(List.of(searchStockDto))));
+        }
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping(value = "/movements", consumes = NDJSON, produces = NDJSON)
+    @Operation(
+            summary = "Поток поступлений и отгрузок",
+            description = "Тело - NDJSON, по движению на строку: {\"color\":\"red\",\"cottonPercentage\":50,\"quantity\":-3}. " +
+                    "Положительное количество - поступление, отрицательное - отгрузка. Строки разбираются по мере поступления " +
+                    "и применяются порциями по socks.import.movement-chunk-size, каждая порция своей транзакцией. " +
+                    "Движения внутри порции применяются в порядке строк, отказ одного движения не отменяет остальные. " +
+                    "Ответ - NDJSON, строка подтверждения на каждую порцию отправляется сразу после ее применения"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Поток подтверждений порций",
+                    content = @Content(
+                            mediaType = NDJSON,
+                            schema = @Schema(implementation = MovementAckDto.class)
+                    )
+            )
+    })
+    public ResponseEntity<StreamingResponseBody> stockMovements(InputStream body) {
+        StreamingResponseBody acks = out -> movementStreamService.process(body, out);
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(acks);
+    }
+
     @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
             summary = "Поступление партии товаров",
-            description = "Контроллер принимает файл CSV, парсит его и обновляет остатки товаров на складе, увеличивая их."
+            description = "Контроллер принимает файл CSV, парсит его и обновляет остатки товаров на складе, увеличивая их. " +
+                    "Файл разбирается потоково порциями, каждая порция записывается пока разбирается следующая. " +
+                    "Принимаются также сжатые .csv.gz и .csv.zst, они распаковываются по ходу разбора. " +
+                    "Фиксация по порциям или всего файла одной транзакцией задается настройкой socks.import.commit-mode. " +
+                    "С async=true файл импортируется фоновой задачей: ответ 202 с id задачи, ход импорта - GET /api/socks/batch/{id}. " +
+                    "mode=validate проверяет весь файл без записи в БД, mode=apply-valid применяет только корректные строки, " +
+                    "оба возвращают отчет с номерами ошибочных строк"
     )
     @ApiResponses({
             @ApiResponse(
@@ -172,6 +231,30 @@ public class SockController {
                     description = "Файл успешно обработан, остатки обновлены",
                     content = @Content(schema = @Schema(implementation = String.class))
             ),
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Файл обработан в режиме validate или apply-valid",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ImportReportDto.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Файл принят, задача импорта поставлена в очередь (async=true)",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ImportJobDto.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "Очередь задач импорта клиента заполнена",
+                    content = @Content(
+                            mediaType = "text/plain",
+                            schema = @Schema(type = "string")
+                    )
+            ),
             @ApiResponse(
                     responseCode = "400",
                     description = "Ошибка при обработке файла. Возможные причины: неверный формат файла, повреждённый файл" +
@@ -185,20 +268,69 @@ public class SockController {
                     )
             )
     })
-    public ResponseEntity<String> incomeSockBatch(
+    public ResponseEntity<?> incomeSockBatch(
             @Parameter(description = "Файл для загрузки", required = true)
-            @RequestParam("file") MultipartFile file) throws Exception {
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Импортировать фоновой задачей, не дожидаясь окончания")
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            @Parameter(description = "apply - импорт до первой ошибки, validate - только проверка файла без записи в БД, " +
+                    "apply-valid - применить корректные строки, ошибочные вернуть в отчете")
+            @RequestParam(value = "mode", defaultValue = "apply") String mode,
+            @Parameter(description = "Клиент, от имени которого идет импорт. Ограничивает число его одновременных задач, " +
+                    "если клиент есть в socks.import.tenants, иначе задача учитывается в лимите клиента default")
+            @RequestHeader(value = "X-Tenant-Id", defaultValue = "default") String tenant) throws Exception {
 
-            // Обрабатываем файл и создаем список DTO для обновления остатков
-            List<StockDto> stockDtoList = csvParserService.parseCsvFile(file);
+            ImportMode importMode = ImportMode.fromValue(mode);
+            if (async) {
+                ImportJobDto job = importJobService.submit(file, tenant, importMode);
+                return ResponseEntity.accepted()
+                        .location(URI.create("/api/socks/batch/" + job.getId()))
+                        .body(job);
+            }
 
-            // Обновляем остатки на складе
-            stockService.addedStock(stockDtoList);
+            if (importMode != ImportMode.APPLY) {
+                // Файл проходится целиком, в ответе отчет об ошибочных строках
+                return ResponseEntity.ok(stockImportService.importCsv(file, importMode));
+            }
+
+            // Разбираем файл порциями и обновляем остатки на складе
+            long rows = stockImportService.importCsv(file);
+            log.info("Партия товаров из файла {} принята, строк: {}", file.getOriginalFilename(), rows);
 
         return ResponseEntity.noContent().build();
 
     }
 
+    @GetMapping("/batch/{id}")
+    @Operation(
+            summary = "Состояние задачи импорта",
+            description = "Возвращает состояние фоновой задачи импорта: разобрано и применено строк, скорость и ошибку"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Состояние задачи",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ImportJobDto.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Задача не найдена или уже удалена",
+                    content = @Content(
+                            mediaType = "text/plain",
+                            schema = @Schema(
+                                    type = "string",
+                                    example = "Задача импорта 5f0c6c1e-7c36-4d8e-9a55-2f0bb1c2a0d4 не найдена"
+                            )
+                    )
+            )
+    })
+    public ResponseEntity<ImportJobDto> getImportJob(@PathVariable String id) {
+        return ResponseEntity.ok(importJobService.getJob(id));
+    }
+
     @GetMapping
     @Operation(
             summary = "Получение общего количества носков с фильтрацией",
@@ -253,6 +385,167 @@ public class SockController {
     }
 
 
+    @GetMapping("/items")
+    @Operation(
+            summary = "Список товаров",
+            description = "Возвращает товары с остатками постранично в порядке цвета и процента хлопка. Фильтры те же, " +
+                    "что у GET /api/socks, но цвет необязателен, а без фильтра по хлопку выдаются все товары цвета. " +
+                    "Следующая страница запрашивается с after из поля next ответа, поэтому время ответа не зависит " +
+                    "от номера страницы. Порядок цветов - порядок их появления на складе, а не алфавитный"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Страница товаров",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = SockPageDto.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Ошибка в параметрах фильтрации или некорректный курсор",
+                    content = @Content(mediaType = "text/plain", schema = @Schema(type = "string"))
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Логическая ошибка в параметрах фильтрации",
+                    content = @Content(
+                            mediaType = "text/plain",
+                            schema = @Schema(
+                                    type = "string",
+                                    example = "Ошибка бизнес-логики: 'lessThan' должно быть больше 'moreThan'.")
+                    )
+            )
+    })
+    public ResponseEntity<SockPageDto> getSocks(
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false) @Min(value = 0, message = "Значение поля moreThan не должно быть меньше чем 0") @Max(value = 100, message = "Значение поля moreThan не должно превышать 100") Integer moreThan,
+            @RequestParam(required = false) @Min(value = 0, message = "Значение поля lessThan не должно быть меньше чем 0") @Max(value = 100, message = "Значение поля lessThan не должно превышать 100") Integer lessThan,
+            @RequestParam(required = false) @Min(value = 0, message = "Значение поля equal не должно быть меньше чем 0") @Max(value = 100, message = "Значение поля equal не должно превышать 100") Integer equal,
+            @Parameter(description = "Курсор из поля next предыдущей страницы, пусто - первая страница")
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") @Min(value = 1, message = "Значение поля limit должно быть не меньше 1") @Max(value = 1000, message = "Значение поля limit не должно превышать 1000") int limit) {
+        return ResponseEntity.ok(stockService.getSocks(color, moreThan, lessThan, equal, after, limit));
+    }
+
+    @GetMapping("/export")
+    @Operation(
+            summary = "Выгрузка всех остатков",
+            description = "Отдает все товары с остатками потоком по мере чтения из БД. format=csv - строки " +
+                    "цвет,процент хлопка,количество, файл можно загрузить обратно через POST /api/socks/batch " +
+                    "(если в цвете товара есть запятая или перевод строки, CSV не отдается - 409). format=ndjson - объект на строку " +
+                    "в формате POST /api/socks/movements, товары с нулевым остатком в него не попадают"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Поток остатков",
+                    content = {
+                            @Content(mediaType = "text/csv", schema = @Schema(type = "string", example = "red,50,3")),
+                            @Content(mediaType = NDJSON, schema = @Schema(
+                                    type = "string", example = "{\"color\":\"red\",\"cottonPercentage\":50,\"quantity\":3}"))
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Неизвестный формат",
+                    content = @Content(mediaType = "text/plain", schema = @Schema(type = "string"))
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "CSV не передаст цвет с запятой или переводом строки, нужен format=ndjson",
+                    content = @Content(mediaType = "text/plain", schema = @Schema(type = "string"))
+            )
+    })
+    public ResponseEntity<StreamingResponseBody> exportStock(
+            @Parameter(description = "csv или ndjson")
+            @RequestParam(value = "format", defaultValue = "csv") String format) {
+        ExportFormat exportFormat = ExportFormat.fromValue(format);
+        stockExportService.checkExportable(exportFormat);
+        StreamingResponseBody body = out -> stockExportService.export(exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"socks." + exportFormat.getValue() + "\"")
+                .body(body);
+    }
+
+    @PostMapping("/quantities")
+    @Operation(
+            summary = "Количество носков по нескольким фильтрам",
+            description = "Принимает список фильтров с теми же полями, что у GET /api/socks: color, moreThan, lessThan, equal. " +
+                    "Все фильтры считаются одним запросом к БД. Ответ - количества в порядке фильтров, " +
+                    "0 - под фильтр не попал ни один товар или фильтр по хлопку не указан"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Количества по фильтрам",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(example = "[123, 0, 7]")
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Ошибка в параметрах фильтров",
+                    content = @Content(mediaType = "text/plain", schema = @Schema(type = "string"))
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Логическая ошибка в параметрах фильтра",
+                    content = @Content(
+                            mediaType = "text/plain",
+                            schema = @Schema(
+                                    type = "string",
+                                    example = "Ошибка бизнес-логики: фильтр 2: 'lessThan' должно быть больше 'moreThan'.")
+                    )
+            )
+    })
+    public ResponseEntity<List<Integer>> getSocksQuantities(
+            @RequestBody
+            @NotEmpty(message = "Список фильтров не должен быть пустым")
+            @Size(max = 1000, message = "Не более 1000 фильтров в запросе")
+            List<@Valid QuantityFilterDto> filters) {
+        List<Integer> quantities = stockService.getSocksQuantities(filters);
+        // Как у GET /api/socks: нет товаров под фильтром - 0
+        quantities.replaceAll(quantity -> quantity == null ? 0 : quantity);
+        return ResponseEntity.ok(quantities);
+    }
+
+    @GetMapping("/histogram")
+    @Operation(
+            summary = "Распределение остатков по проценту хлопка",
+            description = "Возвращает для каждого цвета из colors (через запятую) остатки по проценту хлопка одним запросом " +
+                    "вместо отдельного GET /api/socks на каждый процент. Проценты с нулевым остатком и без товаров не " +
+                    "возвращаются, для цвета без остатков - пустой объект"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Остатки по цветам и проценту хлопка",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(example = "{ \"red\": { \"10\": 5, \"50\": 7 }, \"blue\": {} }")
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Не указаны цвета",
+                    content = @Content(
+                            mediaType = "text/plain",
+                            schema = @Schema(
+                                    type = "string",
+                                    example = "Некорректный формат данных. Поле 'colors' не должно быть пустым.")
+                    )
+            )
+    })
+    public ResponseEntity<Map<String, SortedMap<Integer, Integer>>> getCottonHistogram(
+            @Parameter(description = "Цвета через запятую", example = "red,blue")
+            @RequestParam @NotEmpty(message = "Поле colors - обязательно для заполнения") List<String> colors) {
+        return ResponseEntity.ok(stockService.getCottonHistogram(colors));
+    }
+
     private List<StockDto> getStockDtoList(List<SearchStockDto> searchStockDtoList) {
 
         List<StockDto> stockDtoList = new ArrayList<>();
@@ -267,7 +560,7 @@ public class SockController {
             stockDto.setQuantity(searchStockDto.getQuantity());
             stockDtoList.add(stockDto);
         }
-        log.info("START GET STOCK DTO LIST " + stockDtoList.size());
+        log.debug("START GET STOCK DTO LIST {}", stockDtoList.size());
         return stockDtoList;
     }
 
@@ -0,0 +1,27 @@
+package org.example.dto;
+
+// Фильтр по проценту хлопка, приведенный к включительному диапазону [from, to].
+// Открытая граница - Integer.MIN_VALUE / Integer.MAX_VALUE, from > to - пустой диапазон
+public record CottonRange(int from, int to) {
+
+    private static final CottonRange EMPTY = new CottonRange(1, 0);
+
+    // Те же правила, что у GET /api/socks: оба moreThan и lessThan - диапазон, иначе moreThan, lessThan, equal.
+    // Без фильтра возвращает null
+    public static CottonRange of(Integer moreThan, Integer lessThan, Integer equal) {
+        // Строгие границы на краях int не сдвигаются без переполнения, под них ничего не попадает
+        if ((moreThan != null && moreThan == Integer.MAX_VALUE) || (lessThan != null && lessThan == Integer.MIN_VALUE)) {
+            return EMPTY;
+        }
+        if (moreThan != null && lessThan != null) {
+            return new CottonRange(moreThan + 1, lessThan - 1);
+        } else if (moreThan != null) {
+            return new CottonRange(moreThan + 1, Integer.MAX_VALUE);
+        } else if (lessThan != null) {
+            return new CottonRange(Integer.MIN_VALUE, lessThan - 1);
+        } else if (equal != null) {
+            return new CottonRange(equal, equal);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+package org.example.dto;
+
+// Формат выгрузки остатков
+public enum ExportFormat {
+    // Строки цвет,процент хлопка,количество - тот же формат, что принимает POST /api/socks/batch
+    CSV("csv", "text/csv"),
+    // Объект {"color":"red","cottonPercentage":50,"quantity":3} на строку, как у POST /api/socks/movements
+    NDJSON("ndjson", "application/x-ndjson");
+
+    private final String value;
+    private final String contentType;
+
+    ExportFormat(String value, String contentType) {
+        this.value = value;
+        this.contentType = contentType;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public static ExportFormat fromValue(String value) {
+        for (ExportFormat format : values()) {
+            if (format.value.equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный формат выгрузки: " + value + ". Допустимо: csv, ndjson");
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Ошибочная строка файла импорта")
+public class ImportErrorDto {
+
+    @Schema(description = "Номер строки от начала файла", example = "1532")
+    private long line;
+    @Schema(description = "Строка файла, длинные строки обрезаются", example = "green,4,Зеленый")
+    private String raw;
+    @Schema(description = "Причина ошибки", example = "Позиция : green,4,Зеленый")
+    private String reason;
+}
@@ -0,0 +1,39 @@
+package org.example.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Schema(description = "Состояние фоновой задачи импорта CSV")
+public class ImportJobDto {
+
+    @Schema(description = "Идентификатор задачи", example = "5f0c6c1e-7c36-4d8e-9a55-2f0bb1c2a0d4")
+    private String id;
+    @Schema(description = "Имя загруженного файла", example = "socks.csv")
+    private String fileName;
+    @Schema(description = "Режим импорта", example = "apply")
+    private String mode;
+    private Status status;
+    @Schema(description = "Разобрано строк файла", example = "150000")
+    private long rowsParsed;
+    @Schema(description = "Применено строк к остаткам", example = "145000")
+    private long rowsApplied;
+    @Schema(description = "Скорость применения, строк в секунду", example = "52000")
+    private long rowsPerSecond;
+    private Instant submittedAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    @Schema(description = "Причина ошибки, если задача завершилась неудачно", example = "Позиция : green,4,Зеленый")
+    private String error;
+    @Schema(description = "Итог режимов validate и apply-valid, появляется по завершении задачи")
+    private ImportReportDto report;
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.dto;
+
+// Режим загрузки партии товаров
+public enum ImportMode {
+    // Первая ошибочная строка прерывает импорт
+    APPLY("apply"),
+    // Файл только проверяется, в БД ничего не пишется
+    VALIDATE("validate"),
+    // Применяются только корректные строки, ошибочные попадают в отчет
+    APPLY_VALID("apply-valid");
+
+    private final String value;
+
+    ImportMode(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static ImportMode fromValue(String value) {
+        for (ImportMode mode : values()) {
+            if (mode.value.equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный режим импорта: " + value + ". Допустимо: apply, validate, apply-valid");
+    }
+}
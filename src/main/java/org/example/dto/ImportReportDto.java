@@ -0,0 +1,26 @@
+package org.example.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "Итог проверки или импорта файла")
+public class ImportReportDto {
+
+    @Schema(description = "Режим импорта", example = "validate")
+    private String mode;
+    @Schema(description = "Всего строк в файле", example = "2000000")
+    private long rowsTotal;
+    @Schema(description = "Корректных строк", example = "1999998")
+    private long rowsValid;
+    @Schema(description = "Ошибочных строк", example = "2")
+    private long rowsInvalid;
+    @Schema(description = "Строк применено к остаткам, в режиме validate всегда 0", example = "0")
+    private long rowsApplied;
+    @Schema(description = "Первые ошибочные строки, не больше socks.import.max-reported-errors")
+    private List<ImportErrorDto> errors;
+    @Schema(description = "Ошибок больше, чем попало в отчет")
+    private boolean errorsTruncated;
+}
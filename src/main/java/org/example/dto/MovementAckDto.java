@@ -0,0 +1,24 @@
+package org.example.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "Подтверждение порции движений из потока NDJSON")
+public class MovementAckDto {
+
+    @Schema(description = "Номер порции с 1", example = "3")
+    private long chunk;
+    @Schema(description = "Первая строка порции", example = "2001")
+    private long firstLine;
+    @Schema(description = "Последняя строка порции", example = "3000")
+    private long lastLine;
+    @Schema(description = "Применено движений", example = "998")
+    private int applied;
+    @Schema(description = "Отклоненные движения порции")
+    private List<MovementRejectionDto> rejected;
+    @Schema(description = "Поток не удалось разобрать дальше этой порции, остаток потока не обработан")
+    private String error;
+}
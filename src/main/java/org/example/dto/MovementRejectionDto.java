@@ -0,0 +1,18 @@
+package org.example.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Движение из потока, которое не применено")
+public class MovementRejectionDto {
+
+    @Schema(description = "Номер строки от начала потока", example = "17")
+    private long line;
+    @Schema(description = "Причина отказа", example = "Нехватка носков на складе. товара носки: red/50 недостаточно на складе")
+    private String reason;
+}
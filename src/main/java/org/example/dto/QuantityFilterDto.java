@@ -0,0 +1,40 @@
+package org.example.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Фильтр запроса количества носков, те же параметры, что у GET /api/socks")
+public class QuantityFilterDto {
+
+    @Schema(
+            description = "Цвет носков в запросе",
+            example = "red"
+    )
+    @NotBlank(message = "Поле color - обязательно для заполнения")
+    private String color;
+
+    @Schema(description = "Процент хлопка больше чем", example = "10")
+    @Min(value = 0, message = "Значение поля moreThan не должно быть меньше чем 0")
+    @Max(value = 100, message = "Значение поля moreThan не должно превышать 100")
+    private Integer moreThan;
+
+    @Schema(description = "Процент хлопка меньше чем", example = "90")
+    @Min(value = 0, message = "Значение поля lessThan не должно быть меньше чем 0")
+    @Max(value = 100, message = "Значение поля lessThan не должно превышать 100")
+    private Integer lessThan;
+
+    @Schema(description = "Процент хлопка равен")
+    @Min(value = 0, message = "Значение поля equal не должно быть меньше чем 0")
+    @Max(value = 100, message = "Значение поля equal не должно превышать 100")
+    private Integer equal;
+}
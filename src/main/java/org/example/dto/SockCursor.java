@@ -0,0 +1,27 @@
+package org.example.dto;
+
+// Позиция в списке товаров: последний выданный товар в порядке (color_id, процент хлопка).
+// Товар уникален по этой паре, поэтому id для однозначного порядка не нужен.
+// Клиенту отдается строкой и разбирается обратно, содержимое для него непрозрачно
+public record SockCursor(int colorId, int cottonPercentage) {
+
+    // Перед любым товаром: id цветов начинаются с 1
+    public static final SockCursor START = new SockCursor(0, Integer.MIN_VALUE);
+
+    public static SockCursor parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return START;
+        }
+        int separator = value.indexOf(':');
+        try {
+            return new SockCursor(Integer.parseInt(value.substring(0, separator)), Integer.parseInt(value.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Некорректный курсор страницы: " + value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return colorId + ":" + cottonPercentage;
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Товар в списке товаров")
+public class SockItemDto {
+
+    @Schema(description = "Id товара", example = "12")
+    private Long id;
+    @Schema(description = "Цвет носков", example = "red")
+    private String color;
+    @Schema(description = "Процентное содержание хлопка", example = "50")
+    private int cottonPercentage;
+    @Schema(description = "Остаток на складе, null - остатка по товару не было", example = "123")
+    private Integer quantity;
+}
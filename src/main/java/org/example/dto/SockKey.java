@@ -0,0 +1,5 @@
+package org.example.dto;
+
+// Ключ товара: цвет и процент хлопка. По нему сворачиваются строки партии
+public record SockKey(String color, int cottonPercentage) {
+}
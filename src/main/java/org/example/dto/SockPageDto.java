@@ -0,0 +1,20 @@
+package org.example.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Страница списка товаров")
+public class SockPageDto {
+
+    @Schema(description = "Товары страницы")
+    private List<SockItemDto> items;
+    @Schema(description = "Курсор следующей страницы для параметра after, null - страница последняя", example = "3:50")
+    private String next;
+}
@@ -0,0 +1,65 @@
+package org.example.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Порция строк CSV в колоночном виде - три массива вместо пары SockDto/StockDto на каждую строку
+public class StockChunk {
+
+    private final String[] colors;
+    private final int[] cottonPercentages;
+    private final int[] quantities;
+    private int size;
+
+    public StockChunk(int capacity) {
+        this.colors = new String[capacity];
+        this.cottonPercentages = new int[capacity];
+        this.quantities = new int[capacity];
+    }
+
+    public void add(String color, int cottonPercentage, int quantity) {
+        colors[size] = color;
+        cottonPercentages[size] = cottonPercentage;
+        quantities[size] = quantity;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == colors.length;
+    }
+
+    public String getColor(int index) {
+        return colors[index];
+    }
+
+    public int getCottonPercentage(int index) {
+        return cottonPercentages[index];
+    }
+
+    public int getQuantity(int index) {
+        return quantities[index];
+    }
+
+    public List<StockDto> toStockDtoList() {
+        List<StockDto> stockDtoList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            SockDto sockDto = new SockDto();
+            sockDto.setColor(colors[i]);
+            sockDto.setCottonPercentage(cottonPercentages[i]);
+
+            StockDto stockDto = new StockDto();
+            stockDto.setSockDto(sockDto);
+            stockDto.setQuantity(quantities[i]);
+            stockDtoList.add(stockDto);
+        }
+        return stockDtoList;
+    }
+}
@@ -0,0 +1,5 @@
+package org.example.dto;
+
+// Фильтр суммы остатков: цвет и включительный диапазон процента хлопка
+public record StockFilter(String color, CottonRange range) {
+}
@@ -0,0 +1,9 @@
+package org.example.dto;
+
+// Одиночное движение остатка: положительное количество - поступление, отрицательное - отгрузка
+public record StockMovement(SockKey key, int quantity) {
+
+    public boolean isOutcome() {
+        return quantity < 0;
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.entity;
+
+import lombok.RequiredArgsConstructor;
+import org.example.repositories.ColorDictionary;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+// Цвет товара в БД - color_id из словаря, в сущности и в запросах JPQL - имя цвета.
+// Создается hibernate через контейнер бинов Spring. Цвет не добавляется в словарь: неизвестный цвет
+// в условии запроса ничего не находит, новый цвет перед сохранением товара регистрирует сервис
+@Converter
+@RequiredArgsConstructor
+public class ColorConverter implements AttributeConverter<String, Integer> {
+
+    private final ColorDictionary colorDictionary;
+
+    @Override
+    public Integer convertToDatabaseColumn(String color) {
+        if (color == null) {
+            return null;
+        }
+        Integer id = colorDictionary.findId(color);
+        return id == null ? ColorDictionary.UNKNOWN_ID : id;
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer colorId) {
+        return colorId == null ? null : colorDictionary.nameOf(colorId);
+    }
+}
@@ -5,23 +5,36 @@ import lombok.*;
 import javax.persistence.*;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_sock_color_cotton", columnNames = {"color_id", "cotton_percentage"}))
 @Setter
 @Getter
-@AllArgsConstructor
 @NoArgsConstructor
 public class SockEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Идентификаторы из последовательности блоками по 50 - IDENTITY отключает пакетную вставку в hibernate
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sock_seq")
+    @SequenceGenerator(name = "sock_seq", sequenceName = "sock_entity_seq", allocationSize = 50)
     Long id;
 
+    // Нормализованное имя цвета, в таблице - ссылка на словарь color
+    @Column(name = "color_id")
+    @Convert(converter = ColorConverter.class)
     private String color;
 
     @Column(name = "cotton_percentage")
     private Integer cottonPercentage;
 
+    // Остаток товара, null - остатка по товару не было. Меняется только SQL запросами StockRepository:
+    // hibernate его не пишет, иначе сохранение товара затирало бы параллельные изменения остатка
+    @Column(insertable = false, updatable = false)
+    private Integer quantity;
 
-
+    public SockEntity(Long id, String color, Integer cottonPercentage) {
+        this.id = id;
+        this.color = color;
+        this.cottonPercentage = cottonPercentage;
+    }
 
     public String toString() {
         return " носки {" +
@@ -1,23 +0,0 @@
-package org.example.entity;
-
-import lombok.Getter;
-import lombok.NoArgsConstructor;
-import lombok.Setter;
-
-import javax.persistence.*;
-
-@Entity
-@Setter
-@Getter
-@NoArgsConstructor
-public class StockEntity {
-
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
-
-    @ManyToOne
-    private SockEntity sock;
-
-    private int quantity;
-}
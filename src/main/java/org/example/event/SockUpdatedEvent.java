@@ -0,0 +1,7 @@
+package org.example.event;
+
+import org.example.dto.SockKey;
+
+// Товар сменил цвет или процент хлопка, его остаток переехал вместе с ним
+public record SockUpdatedEvent(SockKey from, SockKey to) {
+}
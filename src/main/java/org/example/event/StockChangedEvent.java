@@ -0,0 +1,9 @@
+package org.example.event;
+
+import org.example.dto.SockKey;
+
+import java.util.Map;
+
+// Изменение остатков: на сколько изменилось количество каждого товара. Публикуется внутри транзакции записи
+public record StockChangedEvent(Map<SockKey, Integer> deltas) {
+}
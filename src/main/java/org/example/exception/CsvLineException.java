@@ -0,0 +1,22 @@
+package org.example.exception;
+
+// Ошибка в строке CSV. Номер строки считается от начала файла, с единицы
+public class CsvLineException extends IllegalArgumentException {
+
+    private final long lineNumber;
+    private final String reason;
+
+    public CsvLineException(long lineNumber, String reason) {
+        super("Строка " + lineNumber + ". " + reason);
+        this.lineNumber = lineNumber;
+        this.reason = reason;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
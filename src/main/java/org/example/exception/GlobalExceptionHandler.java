@@ -79,6 +79,36 @@ public class GlobalExceptionHandler {
         log.error(response);
         return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
     }
+    @ExceptionHandler(ImportJobNotFoundException.class)
+    public ResponseEntity<String> handleImportJobNotFoundException(ImportJobNotFoundException ex) {
+
+        String response = "Задача импорта " + ex.getMessage() + " не найдена";
+        log.error(response);
+        return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+    }
+    // Очередь задач импорта клиента заполнена
+    @ExceptionHandler(TooManyImportJobsException.class)
+    public ResponseEntity<String> handleTooManyImportJobsException(TooManyImportJobsException ex) {
+
+        String response = "Слишком много задач импорта. " + ex.getMessage();
+        log.error(response);
+        return new ResponseEntity<>(response, HttpStatus.TOO_MANY_REQUESTS);
+    }
+    // Файл для импорта с сервера вне каталога импорта или импорт с сервера отключен
+    @ExceptionHandler(ImportFileAccessException.class)
+    public ResponseEntity<String> handleImportFileAccessException(ImportFileAccessException ex) {
+
+        String response = "Доступ к файлу запрещен. " + ex.getMessage();
+        log.error(response);
+        return new ResponseEntity<>(response, HttpStatus.FORBIDDEN);
+    }
+    @ExceptionHandler(ImportFileNotFoundException.class)
+    public ResponseEntity<String> handleImportFileNotFoundException(ImportFileNotFoundException ex) {
+
+        String response = "Файл " + ex.getMessage() + " не найден";
+        log.error(response);
+        return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+    }
     @ExceptionHandler(EntityAlreadyExistsException.class)
     public ResponseEntity<String> handleEntityAlreadyExistsException(EntityAlreadyExistsException ex) {
 
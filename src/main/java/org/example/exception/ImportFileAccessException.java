@@ -0,0 +1,6 @@
+package org.example.exception;
+
+public class ImportFileAccessException extends RuntimeException {
+
+    public ImportFileAccessException(String message) {super(message);}
+}
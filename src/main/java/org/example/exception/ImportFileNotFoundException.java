@@ -0,0 +1,6 @@
+package org.example.exception;
+
+public class ImportFileNotFoundException extends RuntimeException {
+
+    public ImportFileNotFoundException(String message) {super(message);}
+}
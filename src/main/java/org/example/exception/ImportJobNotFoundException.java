@@ -0,0 +1,6 @@
+package org.example.exception;
+
+public class ImportJobNotFoundException extends RuntimeException {
+
+    public ImportJobNotFoundException(String message) {super(message);}
+}
@@ -0,0 +1,6 @@
+package org.example.exception;
+
+public class TooManyImportJobsException extends RuntimeException {
+
+    public TooManyImportJobsException(String message) {super(message);}
+}
@@ -0,0 +1,185 @@
+package org.example.repositories;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.ColorProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Словарь цветов: нормализованное имя цвета <-> целый id из таблицы color.
+// Известные цвета читаются из ConcurrentHashMap без блокировок, в БД идут только промахи - одним запросом на пачку.
+// Цвет, добавленный транзакцией, виден остальным только после ее коммита - до этого он лежит
+// в словаре транзакции, иначе после отката в общем словаре остался бы id без строки в БД
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ColorDictionary {
+
+    // id, которого нет в таблице: запрос по нему ничего не находит, а вставка товара падает на внешнем ключе
+    public static final int UNKNOWN_ID = 0;
+
+    private static final String SELECT_ALL = "SELECT id, name FROM color";
+    private static final String SELECT_IDS = "SELECT id, name FROM color WHERE name = ANY(?::varchar[])";
+    private static final String SELECT_NAME = "SELECT name FROM color WHERE id = ?";
+    // Массив имен отсортирован, поэтому параллельные вставки одних и тех же цветов не ловят взаимоблокировку
+    private static final String INSERT = """
+            INSERT INTO color (name) SELECT * FROM unnest(?::varchar[])
+            ON CONFLICT (name) DO NOTHING
+            RETURNING id, name
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ColorProperties colorProperties;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<Integer, String> names = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        jdbcTemplate.query(SELECT_ALL, (RowCallbackHandler) rs -> publish(rs.getString(2), rs.getInt(1)));
+        log.info("Словарь цветов загружен, цветов: {}", ids.size());
+    }
+
+    public String normalize(String color) {
+        return colorProperties.normalize(color);
+    }
+
+    // id цвета или null, если такого цвета нет. Цвет в словарь не добавляется
+    public Integer findId(String color) {
+        if (color == null) {
+            return null;
+        }
+        return findIds(List.of(color)).get(normalize(color));
+    }
+
+    // id цвета, отсутствующий цвет добавляется в таблицу color в текущей транзакции
+    public int register(String color) {
+        return registerAll(List.of(color)).get(normalize(color));
+    }
+
+    // id известных цветов по нормализованному имени, неизвестных в ответе нет
+    public Map<String, Integer> findIds(Collection<String> colors) {
+        Map<String, Integer> found = new HashMap<>();
+        TreeSet<String> missing = lookup(colors, found);
+        if (!missing.isEmpty()) {
+            // Цвет мог добавить другой экземпляр приложения
+            selectCommitted(missing, found);
+        }
+        return found;
+    }
+
+    // id всех цветов по нормализованному имени, отсутствующие добавляются одним запросом
+    public Map<String, Integer> registerAll(Collection<String> colors) {
+        Map<String, Integer> found = new HashMap<>();
+        TreeSet<String> missing = lookup(colors, found);
+        if (missing.isEmpty()) {
+            return found;
+        }
+        Map<String, Integer> inserted = new HashMap<>();
+        jdbcTemplate.query(INSERT, ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", missing.toArray())),
+                (RowCallbackHandler) rs -> inserted.put(rs.getString(2), rs.getInt(1)));
+        Map<String, Integer> pending = pending(true);
+        inserted.forEach((name, id) -> {
+            if (pending != null) {
+                pending.put(name, id);
+            } else {
+                publish(name, id);
+            }
+        });
+        found.putAll(inserted);
+        missing.removeAll(inserted.keySet());
+        if (!missing.isEmpty()) {
+            // Цвет уже есть в БД: добавлен другим экземпляром или параллельной транзакцией, вставка которой
+            // дождалась ее коммита. Следующий запрос видит зафиксированную строку
+            selectCommitted(missing, found);
+        }
+        log.debug("Цвета добавлены в словарь: {}", inserted);
+        return found;
+    }
+
+    public String nameOf(int id) {
+        String name = names.get(id);
+        if (name != null) {
+            return name;
+        }
+        Map<String, Integer> pending = pending(false);
+        if (pending != null) {
+            for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+                if (entry.getValue() == id) {
+                    return entry.getKey();
+                }
+            }
+        }
+        name = jdbcTemplate.queryForObject(SELECT_NAME, String.class, id);
+        publish(name, id);
+        return name;
+    }
+
+    // Ищет цвета в памяти: найденные кладет в found, возвращает нормализованные имена остальных
+    private TreeSet<String> lookup(Collection<String> colors, Map<String, Integer> found) {
+        Map<String, Integer> pending = pending(false);
+        TreeSet<String> missing = new TreeSet<>();
+        for (String color : colors) {
+            String name = normalize(color);
+            Integer id = ids.get(name);
+            if (id == null && pending != null) {
+                id = pending.get(name);
+            }
+            if (id != null) {
+                found.put(name, id);
+            } else {
+                missing.add(name);
+            }
+        }
+        return missing;
+    }
+
+    // Свои незафиксированные цвета лежат в pending, поэтому найденное в БД уже зафиксировано
+    private void selectCommitted(Collection<String> names, Map<String, Integer> found) {
+        jdbcTemplate.query(SELECT_IDS, ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", names.toArray())),
+                (RowCallbackHandler) rs -> {
+                    publish(rs.getString(2), rs.getInt(1));
+                    found.put(rs.getString(2), rs.getInt(1));
+                });
+    }
+
+    private void publish(String name, int id) {
+        names.put(id, name);
+        ids.put(name, id);
+    }
+
+    // Цвета, добавленные текущей транзакцией. Вне транзакции вставка фиксируется сразу и pending не нужен
+    @SuppressWarnings("unchecked")
+    private Map<String, Integer> pending(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Map<String, Integer> pending = (Map<String, Integer>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null && create) {
+            Map<String, Integer> created = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ColorDictionary.this);
+                    if (status == STATUS_COMMITTED) {
+                        created.forEach(ColorDictionary.this::publish);
+                    }
+                }
+            });
+            pending = created;
+        }
+        return pending;
+    }
+}
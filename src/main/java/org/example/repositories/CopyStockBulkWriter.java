@@ -0,0 +1,195 @@
+package org.example.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.example.dto.SockKey;
+import org.example.dto.StockChunk;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Строки потоком через COPY в нежурналируемую промежуточную таблицу, затем слияние с остатками
+// set-based запросами на весь импорт. Только для PostgreSQL
+@RequiredArgsConstructor
+public class CopyStockBulkWriter implements StockBulkWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String COPY_STAGING =
+            "COPY stock_import_staging (import_id, color, cotton_percentage, quantity) FROM STDIN";
+
+    private static final String SELECT_STAGED_COLORS =
+            "SELECT DISTINCT color FROM stock_import_staging WHERE import_id = ?::uuid";
+
+    // Цвета переводятся в color_id по массивам из словаря цветов. Порядок вставки тот же, что у массивов
+    // в StockRepositoryCustomImpl. Товар и остаток - одна строка, поэтому новые товары создаются тем же запросом
+    private static final String MERGE_STAGING = """
+            WITH delta AS (
+                SELECT c.id AS color_id, st.cotton_percentage, SUM(st.quantity)::int AS quantity
+                FROM stock_import_staging st
+                JOIN unnest(?::varchar[], ?::int[]) AS c(name, id) ON c.name = st.color
+                WHERE st.import_id = ?::uuid
+                GROUP BY c.id, st.cotton_percentage
+            ), merged AS (
+                INSERT INTO sock_entity (color_id, cotton_percentage, quantity)
+                SELECT color_id, cotton_percentage, quantity
+                FROM delta
+                ORDER BY color_id, cotton_percentage
+                ON CONFLICT (color_id, cotton_percentage)
+                DO UPDATE SET quantity = COALESCE(sock_entity.quantity, 0) + EXCLUDED.quantity
+            )
+            SELECT color_id, cotton_percentage, quantity FROM delta
+            """;
+
+    private static final String DELETE_STAGING = "DELETE FROM stock_import_staging WHERE import_id = ?::uuid";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ColorDictionary colorDictionary;
+
+    @Override
+    public Session begin() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("COPY импорт выполняется только внутри транзакции");
+        }
+        // Соединение текущей транзакции, после нее его вернет менеджер транзакций
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGING);
+            return new CopySession(UUID.randomUUID().toString(), copyIn);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось начать COPY", e);
+        }
+    }
+
+    private class CopySession implements Session {
+
+        private final String importId;
+        private final byte[] importIdBytes;
+        private final CopyIn copyIn;
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private int length;
+        // Разборщик отдает один экземпляр String на цвет, поэтому подряд идущие строки одного цвета
+        // нормализуются один раз
+        private String lastColor;
+        private String lastName;
+
+        CopySession(String importId, CopyIn copyIn) {
+            this.importId = importId;
+            this.importIdBytes = importId.getBytes(StandardCharsets.US_ASCII);
+            this.copyIn = copyIn;
+        }
+
+        @Override
+        public void write(StockChunk chunk) {
+            for (int i = 0; i < chunk.size(); i++) {
+                append(importIdBytes);
+                append((byte) '\t');
+                appendEscaped(nameOf(chunk.getColor(i)));
+                append((byte) '\t');
+                append(Integer.toString(chunk.getCottonPercentage(i)).getBytes(StandardCharsets.US_ASCII));
+                append((byte) '\t');
+                append(Integer.toString(chunk.getQuantity(i)).getBytes(StandardCharsets.US_ASCII));
+                append((byte) '\n');
+                if (length >= BUFFER_SIZE) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public Map<SockKey, Integer> finish() {
+            flush();
+            try {
+                copyIn.endCopy();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Не удалось завершить COPY", e);
+            }
+            // Новые цвета импорта попадают в словарь одним запросом
+            Map<String, Integer> colorIds = colorDictionary.registerAll(
+                    jdbcTemplate.queryForList(SELECT_STAGED_COLORS, String.class, importId));
+            String[] colorNames = colorIds.keySet().toArray(new String[0]);
+            Integer[] ids = colorIds.values().toArray(new Integer[0]);
+            Map<SockKey, Integer> deltas = new HashMap<>();
+            jdbcTemplate.query(MERGE_STAGING, ps -> {
+                ps.setArray(1, ps.getConnection().createArrayOf("varchar", colorNames));
+                ps.setArray(2, ps.getConnection().createArrayOf("integer", ids));
+                ps.setString(3, importId);
+            }, (RowCallbackHandler) rs ->
+                    deltas.put(new SockKey(colorDictionary.nameOf(rs.getInt(1)), rs.getInt(2)), rs.getInt(3)));
+            jdbcTemplate.update(DELETE_STAGING, importId);
+            return deltas;
+        }
+
+        @Override
+        public void abort() {
+            if (copyIn.isActive()) {
+                try {
+                    copyIn.cancelCopy();
+                } catch (SQLException e) {
+                    // Транзакция все равно откатывается
+                }
+            }
+        }
+
+        private void flush() {
+            if (length == 0) {
+                return;
+            }
+            try {
+                copyIn.writeToCopy(buffer, 0, length);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Ошибка передачи данных через COPY", e);
+            }
+            length = 0;
+        }
+
+        private String nameOf(String color) {
+            if (color != lastColor) {
+                lastName = colorDictionary.normalize(color);
+                lastColor = color;
+            }
+            return lastName;
+        }
+
+        // Текстовый формат COPY: обратная косая черта, табуляция и переводы строк экранируются
+        private void appendEscaped(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                switch (b) {
+                    case '\\' -> append((byte) '\\', (byte) '\\');
+                    case '\t' -> append((byte) '\\', (byte) 't');
+                    case '\n' -> append((byte) '\\', (byte) 'n');
+                    case '\r' -> append((byte) '\\', (byte) 'r');
+                    default -> append(b);
+                }
+            }
+        }
+
+        private void append(byte b) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[length++] = b;
+        }
+
+        private void append(byte... bytes) {
+            if (length + bytes.length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes.length));
+            }
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.example.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.example.dto.SockKey;
+import org.example.dto.StockChunk;
+import org.example.entity.SockEntity;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+// Запись без COPY: суммы по товарам копятся в памяти и применяются через репозитории.
+// Результат тот же, что у CopyStockBulkWriter. Словарь цветов и запросы остатков - SQL PostgreSQL,
+// поэтому это не вариант для других БД, а обход для окружений, где недоступен COPY
+@RequiredArgsConstructor
+public class JpaStockBulkWriter implements StockBulkWriter {
+
+    private final SockRepository sockRepository;
+    private final StockRepository stockRepository;
+    private final ColorDictionary colorDictionary;
+
+    @Override
+    public Session begin() {
+        return new Session() {
+
+            private final Map<SockKey, Integer> quantities = new HashMap<>();
+
+            @Override
+            public void write(StockChunk chunk) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    quantities.merge(new SockKey(colorDictionary.normalize(chunk.getColor(i)), chunk.getCottonPercentage(i)),
+                            chunk.getQuantity(i), Math::addExact);
+                }
+            }
+
+            @Override
+            public Map<SockKey, Integer> finish() {
+                // Строки товаров меняются в том же порядке (color_id, процент хлопка), что и в остальных запросах
+                Map<String, Integer> colorIds = colorDictionary.registerAll(quantities.keySet().stream().map(SockKey::color).toList());
+                Comparator<SockKey> keyOrder = Comparator.comparing((SockKey key) -> colorIds.get(key.color()))
+                        .thenComparingInt(SockKey::cottonPercentage);
+                quantities.entrySet().stream().sorted(Map.Entry.comparingByKey(keyOrder)).forEach(entry -> {
+                    SockKey key = entry.getKey();
+                    SockEntity sock = sockRepository.findByColorAndCottonPercentage(key.color(), key.cottonPercentage())
+                            .orElseGet(() -> sockRepository.save(new SockEntity(null, key.color(), key.cottonPercentage())));
+                    stockRepository.addQuantity(sock.getId(), entry.getValue());
+                });
+                return quantities;
+            }
+        };
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.repositories;
+
+import org.example.dto.SockKey;
+import org.example.dto.StockChunk;
+
+import java.util.Map;
+
+// Запись крупной партии: строки сначала передаются в сессию, в конце применяются к остаткам одной операцией.
+// Сессия работает внутри текущей транзакции и держит ее соединение до finish
+public interface StockBulkWriter {
+
+    Session begin();
+
+    interface Session {
+
+        void write(StockChunk chunk);
+
+        // Применяет записанные строки, возвращает изменение остатка по каждому товару
+        Map<SockKey, Integer> finish();
+
+        // Сбрасывает недописанную сессию, транзакция после этого откатывается
+        default void abort() {
+        }
+    }
+}
@@ -1,33 +1,40 @@
 package org.example.repositories;
 
 import org.example.entity.SockEntity;
-import org.example.entity.StockEntity;
-import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.util.Optional;
-
+// Остатки хранятся в строке товара (sock_entity.quantity), поэтому чтение - диапазон по уникальному индексу
+// товара без соединения, а изменение - обновление одной строки. Цвет в условиях JPQL переводится
+// в color_id через ColorConverter, SQL запросы получают id из ColorDictionary
 @Repository
-public interface StockRepository extends JpaRepository<StockEntity, Long> {
+public interface StockRepository extends org.springframework.data.repository.Repository<SockEntity, Long>, StockRepositoryCustom {
+
+    // Текущий остаток товара из БД, null - товара или остатка по нему нет
+    @Query("SELECT s.quantity FROM SockEntity s WHERE s.color = :color AND s.cottonPercentage = :cottonPercentage")
+    Integer findQuantity(@Param("color") String color, @Param("cottonPercentage") int cottonPercentage);
 
-    Optional<StockEntity> findBySock(SockEntity sock);
+    // Прибавляет количество к остатку товара, остаток без записи считается нулевым
+    @Modifying
+    @Query("UPDATE SockEntity s SET s.quantity = COALESCE(s.quantity, 0) + :quantity WHERE s.id = :id")
+    int addQuantity(@Param("id") Long id, @Param("quantity") int quantity);
 
     // Сумма количества носок по цвету и проценту хлопка равно (equal)
-    @Query("SELECT SUM(s.quantity) FROM StockEntity s WHERE s.sock.color = :color AND s.sock.cottonPercentage = :cottonPercentage")
+    @Query("SELECT SUM(s.quantity) FROM SockEntity s WHERE s.color = :color AND s.cottonPercentage = :cottonPercentage")
     Integer sumQuantityByColorAndCottonPercentageEqual(@Param("color") String color, @Param("cottonPercentage") Integer cottonPercentage);
 
     // Сумма количества носок по цвету и проценту хлопка больше чем (moreThan)
-    @Query("SELECT SUM(s.quantity) FROM StockEntity s WHERE s.sock.color = :color AND s.sock.cottonPercentage > :cottonPercentage")
+    @Query("SELECT SUM(s.quantity) FROM SockEntity s WHERE s.color = :color AND s.cottonPercentage > :cottonPercentage")
     Integer sumQuantityByColorAndCottonPercentageGreaterThan(@Param("color") String color, @Param("cottonPercentage") Integer cottonPercentage);
 
     // Сумма количества носок по цвету и проценту хлопка меньше чем (lessThan)
-    @Query("SELECT SUM(s.quantity) FROM StockEntity s WHERE s.sock.color = :color AND s.sock.cottonPercentage < :cottonPercentage")
+    @Query("SELECT SUM(s.quantity) FROM SockEntity s WHERE s.color = :color AND s.cottonPercentage < :cottonPercentage")
     Integer sumQuantityByColorAndCottonPercentageLessThan(@Param("color") String color, @Param("cottonPercentage") Integer cottonPercentage);
 
     // Сумма количества носок по цвету и проценту хлопка в диапазоне (moreThan - lessThan)
-    @Query("SELECT SUM(s.quantity) FROM StockEntity s WHERE s.sock.color = :color AND s.sock.cottonPercentage > :cottonPercentageMin AND s.sock.cottonPercentage < :cottonPercentageMax")
+    @Query("SELECT SUM(s.quantity) FROM SockEntity s WHERE s.color = :color AND s.cottonPercentage > :cottonPercentageMin AND s.cottonPercentage < :cottonPercentageMax")
     Integer sumQuantityByColorAndCottonPercentageInRange(
             @Param("color") String color,
             @Param("cottonPercentageMin") Integer cottonPercentageMin,
@@ -0,0 +1,57 @@
+package org.example.repositories;
+
+import org.example.dto.CottonRange;
+import org.example.dto.SockCursor;
+import org.example.dto.SockKey;
+import org.example.dto.SockPageDto;
+import org.example.dto.StockFilter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+// Цвет в ключах товаров уже нормализован (ColorDictionary.normalize), в ответах ключи те же
+public interface StockRepositoryCustom {
+
+    // Списание одним запросом: остаток уменьшается только если его хватает, иначе строка не меняется.
+    // Возвращает число измененных строк
+    int decrementQuantity(String color, int cottonPercentage, int quantity);
+
+    // Прибавляет количества к остаткам пачкой. Отсутствующие цвета, товары и остатки создаются.
+    // ArithmeticException, если остаток товара вышел бы за int
+    void addQuantities(Map<SockKey, Integer> quantities);
+
+    // Списывает количества пачкой, но только там, где остатка хватает. Возвращает товары, которые списаны
+    Set<SockKey> subtractQuantities(Map<SockKey, Integer> quantities);
+
+    // Блокирует строки остатков до конца транзакции и возвращает их количества. Товаров без остатка в ответе нет
+    Map<SockKey, Integer> lockQuantities(Collection<SockKey> keys);
+
+    // Остатки по проценту хлопка для каждого цвета одним запросом. Ключ - нормализованный цвет,
+    // проценты по возрастанию, нулевых остатков и неизвестных цветов в ответе нет
+    Map<String, SortedMap<Integer, Integer>> cottonHistogram(Collection<String> colors);
+
+    // Суммы остатков по нескольким фильтрам одним запросом, в порядке фильтров.
+    // null - под фильтр не попал ни один товар, как у SUM в БД
+    List<Integer> sumQuantities(List<StockFilter> filters);
+
+    // Страница товаров после курсора в порядке (color_id, процент хлопка), сразу в DTO без сущностей.
+    // color == null - все цвета. Поиск продолжения идет по уникальному индексу товара, поэтому стоимость
+    // страницы не зависит от ее номера
+    SockPageDto findSockPage(String color, CottonRange range, SockCursor after, int limit);
+
+    // Есть ли остаток товара, цвет которого совпадает с регулярным выражением PostgreSQL
+    boolean existsStockWithColorMatching(String regex);
+
+    // Обходит все остатки без загрузки сущностей
+    void forEachStock(StockRowCallback callback);
+
+    // То же, но внутри транзакции строки читаются курсором по fetchSize за раз, а не всем результатом в память
+    void forEachStock(int fetchSize, StockRowCallback callback);
+
+    interface StockRowCallback {
+        void accept(String color, int cottonPercentage, int quantity);
+    }
+}
@@ -0,0 +1,312 @@
+package org.example.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.example.dto.CottonRange;
+import org.example.dto.SockCursor;
+import org.example.dto.SockItemDto;
+import org.example.dto.SockKey;
+import org.example.dto.SockPageDto;
+import org.example.dto.StockFilter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Операции над остатками, которые выполняются одним SQL на всю пачку, а не запросом на строку.
+// Массивы передаются в PostgreSQL целиком и разворачиваются через unnest. Цвета переводятся в color_id
+// словарем в памяти, поэтому запросы сравнивают только целые числа
+@RequiredArgsConstructor
+public class StockRepositoryCustomImpl implements StockRepositoryCustom {
+
+    private static final String DECREMENT_QUANTITY = """
+            UPDATE sock_entity SET quantity = quantity - ?
+            WHERE color_id = ? AND cotton_percentage = ? AND quantity >= ?
+            """;
+
+    // Товар и остаток - одна строка, поэтому новые товары и прибавка к остаткам - один запрос.
+    // Остаток, который вышел бы за int, не меняется и не попадает в RETURNING
+    private static final String ADD_QUANTITIES = """
+            INSERT INTO sock_entity (color_id, cotton_percentage, quantity)
+            SELECT * FROM unnest(?::int[], ?::int[], ?::int[])
+            ON CONFLICT (color_id, cotton_percentage)
+            DO UPDATE SET quantity = COALESCE(sock_entity.quantity, 0) + EXCLUDED.quantity
+            WHERE COALESCE(sock_entity.quantity, 0)::bigint + EXCLUDED.quantity BETWEEN -2147483648 AND 2147483647
+            RETURNING color_id, cotton_percentage
+            """;
+
+    private static final String SUBTRACT_QUANTITIES = """
+            UPDATE sock_entity s SET quantity = s.quantity - v.quantity
+            FROM unnest(?::int[], ?::int[], ?::int[]) AS v(color_id, cotton_percentage, quantity)
+            WHERE s.color_id = v.color_id AND s.cotton_percentage = v.cotton_percentage AND s.quantity >= v.quantity
+            RETURNING s.color_id, s.cotton_percentage
+            """;
+
+    // Блокировки берутся в порядке массива, который отсортирован так же, как в остальных запросах
+    private static final String LOCK_QUANTITIES = """
+            SELECT s.color_id, s.cotton_percentage, s.quantity
+            FROM unnest(?::int[], ?::int[]) WITH ORDINALITY AS v(color_id, cotton_percentage, ord)
+            JOIN sock_entity s ON s.color_id = v.color_id AND s.cotton_percentage = v.cotton_percentage
+            ORDER BY v.ord
+            FOR UPDATE OF s
+            """;
+
+    // Строка товара уникальна по (color_id, cotton_percentage), поэтому группировать нечего: проход по
+    // уникальному индексу товара для каждого цвета сразу дает гистограмму в нужном порядке
+    private static final String COTTON_HISTOGRAM = """
+            SELECT color_id, cotton_percentage, quantity FROM sock_entity
+            WHERE color_id = ANY(?::int[]) AND quantity <> 0
+            ORDER BY color_id, cotton_percentage
+            """;
+
+    // Фильтры разворачиваются в строки с номером, на каждый - проход по диапазону уникального индекса товара.
+    // LEFT JOIN оставляет строку фильтра без товаров, ее сумма null
+    private static final String SUM_QUANTITIES = """
+            SELECT SUM(s.quantity)
+            FROM unnest(?::int[], ?::int[], ?::int[]) WITH ORDINALITY AS f(color_id, cotton_from, cotton_to, ord)
+            LEFT JOIN sock_entity s ON s.color_id = f.color_id
+                AND s.cotton_percentage BETWEEN f.cotton_from AND f.cotton_to
+            GROUP BY f.ord
+            ORDER BY f.ord
+            """;
+
+    // Сравнение строк (color_id, cotton_percentage) > (?, ?) - условие индекса, скан начинается сразу с курсора
+    private static final String SOCK_PAGE = """
+            SELECT id, color_id, cotton_percentage, quantity FROM sock_entity
+            WHERE (color_id, cotton_percentage) > (?, ?) AND cotton_percentage BETWEEN ? AND ?
+            ORDER BY color_id, cotton_percentage
+            LIMIT ?
+            """;
+
+    private static final String SOCK_PAGE_BY_COLOR = """
+            SELECT id, color_id, cotton_percentage, quantity FROM sock_entity
+            WHERE color_id = ? AND (color_id, cotton_percentage) > (?, ?) AND cotton_percentage BETWEEN ? AND ?
+            ORDER BY color_id, cotton_percentage
+            LIMIT ?
+            """;
+
+    // Цветов немного, поэтому сначала подходящие цвета, потом есть ли у них товар с остатком
+    private static final String EXISTS_STOCK_WITH_COLOR = """
+            SELECT EXISTS (
+                SELECT 1 FROM color c JOIN sock_entity s ON s.color_id = c.id
+                WHERE c.name ~ ? AND s.quantity IS NOT NULL
+            )
+            """;
+
+    private static final String SELECT_STOCKS =
+            "SELECT color_id, cotton_percentage, quantity FROM sock_entity WHERE quantity IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ColorDictionary colorDictionary;
+
+    @Override
+    public int decrementQuantity(String color, int cottonPercentage, int quantity) {
+        Integer colorId = colorDictionary.findId(color);
+        if (colorId == null) {
+            return 0;
+        }
+        return jdbcTemplate.update(DECREMENT_QUANTITY, quantity, colorId, cottonPercentage, quantity);
+    }
+
+    @Override
+    public void addQuantities(Map<SockKey, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> ids = colorDictionary.registerAll(quantities.keySet().stream().map(SockKey::color).toList());
+        Map<SockKey, Integer> colorIds = new HashMap<>();
+        quantities.keySet().forEach(key -> colorIds.put(key, ids.get(key.color())));
+        KeyArrays arrays = KeyArrays.sorted(colorIds, quantities);
+        Set<List<Integer>> written = new HashSet<>(jdbcTemplate.query(ADD_QUANTITIES, ps -> {
+            ps.setArray(1, intArray(ps.getConnection(), arrays.colorIds()));
+            ps.setArray(2, intArray(ps.getConnection(), arrays.cottonPercentages()));
+            ps.setArray(3, intArray(ps.getConnection(), arrays.quantities()));
+        }, (rs, rowNum) -> List.of(rs.getInt(1), rs.getInt(2))));
+        if (written.size() < colorIds.size()) {
+            // Исключение откатывает транзакцию вызывающего вместе с остальными товарами пачки
+            SockKey overflow = colorIds.entrySet().stream()
+                    .filter(entry -> !written.contains(List.of(entry.getValue(), entry.getKey().cottonPercentage())))
+                    .map(Map.Entry::getKey)
+                    .findFirst().orElseThrow();
+            throw new ArithmeticException("Остаток товара носки: " + overflow.color() + "/" + overflow.cottonPercentage() +
+                    " превысил бы " + Integer.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public Set<SockKey> subtractQuantities(Map<SockKey, Integer> quantities) {
+        // Товара с неизвестным цветом нет, списывать у него нечего
+        Map<SockKey, Integer> colorIds = knownColorIds(quantities.keySet());
+        if (colorIds.isEmpty()) {
+            return Set.of();
+        }
+        KeyArrays arrays = KeyArrays.sorted(colorIds, quantities);
+        List<SockKey> updated = jdbcTemplate.query(SUBTRACT_QUANTITIES, ps -> {
+            ps.setArray(1, intArray(ps.getConnection(), arrays.colorIds()));
+            ps.setArray(2, intArray(ps.getConnection(), arrays.cottonPercentages()));
+            ps.setArray(3, intArray(ps.getConnection(), arrays.quantities()));
+        }, (rs, rowNum) -> new SockKey(colorDictionary.nameOf(rs.getInt(1)), rs.getInt(2)));
+        return new HashSet<>(updated);
+    }
+
+    @Override
+    public Map<SockKey, Integer> lockQuantities(Collection<SockKey> keys) {
+        Map<SockKey, Integer> quantities = new HashMap<>();
+        Map<SockKey, Integer> colorIds = knownColorIds(keys);
+        if (colorIds.isEmpty()) {
+            return quantities;
+        }
+        KeyArrays arrays = KeyArrays.sorted(colorIds, null);
+        jdbcTemplate.query(LOCK_QUANTITIES, ps -> {
+            ps.setArray(1, intArray(ps.getConnection(), arrays.colorIds()));
+            ps.setArray(2, intArray(ps.getConnection(), arrays.cottonPercentages()));
+        }, (RowCallbackHandler) rs -> {
+            // Товар без остатка блокируется, но в ответ не попадает
+            int quantity = rs.getInt(3);
+            if (!rs.wasNull()) {
+                quantities.put(new SockKey(colorDictionary.nameOf(rs.getInt(1)), rs.getInt(2)), quantity);
+            }
+        });
+        return quantities;
+    }
+
+    @Override
+    public Map<String, SortedMap<Integer, Integer>> cottonHistogram(Collection<String> colors) {
+        Map<String, SortedMap<Integer, Integer>> histograms = new HashMap<>();
+        Map<String, Integer> ids = colorDictionary.findIds(colors);
+        if (ids.isEmpty()) {
+            return histograms;
+        }
+        Integer[] colorIds = ids.values().toArray(new Integer[0]);
+        jdbcTemplate.query(COTTON_HISTOGRAM, ps -> ps.setArray(1, intArray(ps.getConnection(), colorIds)),
+                (RowCallbackHandler) rs -> histograms
+                        .computeIfAbsent(colorDictionary.nameOf(rs.getInt(1)), c -> new TreeMap<>())
+                        .put(rs.getInt(2), rs.getInt(3)));
+        return histograms;
+    }
+
+    @Override
+    public List<Integer> sumQuantities(List<StockFilter> filters) {
+        if (filters.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Integer> ids = colorDictionary.findIds(filters.stream().map(StockFilter::color).toList());
+        int size = filters.size();
+        Integer[] colorIds = new Integer[size];
+        Integer[] cottonFrom = new Integer[size];
+        Integer[] cottonTo = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            StockFilter filter = filters.get(i);
+            // Неизвестный цвет остается на своем месте, но под него ничего не попадает
+            colorIds[i] = ids.getOrDefault(colorDictionary.normalize(filter.color()), ColorDictionary.UNKNOWN_ID);
+            cottonFrom[i] = filter.range().from();
+            cottonTo[i] = filter.range().to();
+        }
+        return jdbcTemplate.query(SUM_QUANTITIES, ps -> {
+            ps.setArray(1, intArray(ps.getConnection(), colorIds));
+            ps.setArray(2, intArray(ps.getConnection(), cottonFrom));
+            ps.setArray(3, intArray(ps.getConnection(), cottonTo));
+        }, (rs, rowNum) -> {
+            long sum = rs.getLong(1);
+            return rs.wasNull() ? null : Math.toIntExact(sum);
+        });
+    }
+
+    @Override
+    public SockPageDto findSockPage(String color, CottonRange range, SockCursor after, int limit) {
+        List<Object> args = new ArrayList<>();
+        if (color != null) {
+            Integer colorId = colorDictionary.findId(color);
+            if (colorId == null) {
+                return new SockPageDto(List.of(), null);
+            }
+            args.add(colorId);
+        }
+        args.addAll(List.of(after.colorId(), after.cottonPercentage(), range.from(), range.to(), limit + 1));
+        // Лишняя строка показывает, есть ли следующая страница
+        List<SockCursor> positions = new ArrayList<>();
+        List<SockItemDto> items = jdbcTemplate.query(color == null ? SOCK_PAGE : SOCK_PAGE_BY_COLOR, (rs, rowNum) -> {
+            positions.add(new SockCursor(rs.getInt(2), rs.getInt(3)));
+            return new SockItemDto(rs.getLong(1), colorDictionary.nameOf(rs.getInt(2)), rs.getInt(3),
+                    (Integer) rs.getObject(4));
+        }, args.toArray());
+        if (items.size() <= limit) {
+            return new SockPageDto(items, null);
+        }
+        return new SockPageDto(items.subList(0, limit), positions.get(limit - 1).toString());
+    }
+
+    @Override
+    public boolean existsStockWithColorMatching(String regex) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(EXISTS_STOCK_WITH_COLOR, Boolean.class, regex));
+    }
+
+    @Override
+    public void forEachStock(StockRowCallback callback) {
+        forEachStock(0, callback);
+    }
+
+    // Драйвер PostgreSQL открывает курсор только при fetchSize > 0 и выключенном autocommit,
+    // вне транзакции результат по-прежнему читается целиком
+    @Override
+    public void forEachStock(int fetchSize, StockRowCallback callback) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SELECT_STOCKS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs ->
+                callback.accept(colorDictionary.nameOf(rs.getInt(1)), rs.getInt(2), rs.getInt(3)));
+    }
+
+    private Map<SockKey, Integer> knownColorIds(Collection<SockKey> keys) {
+        Map<String, Integer> ids = colorDictionary.findIds(keys.stream().map(SockKey::color).toList());
+        Map<SockKey, Integer> colorIds = new HashMap<>();
+        for (SockKey key : keys) {
+            Integer colorId = ids.get(key.color());
+            if (colorId != null) {
+                colorIds.put(key, colorId);
+            }
+        }
+        return colorIds;
+    }
+
+    private static Array intArray(Connection connection, Integer[] values) throws SQLException {
+        return connection.createArrayOf("integer", values);
+    }
+
+    // Id цветов, проценты хлопка и количества в виде параллельных массивов для unnest.
+    // Строки блокируются в одном порядке (color_id, процент хлопка), что бы параллельные запросы
+    // не ловили взаимоблокировку
+    private record KeyArrays(Integer[] colorIds, Integer[] cottonPercentages, Integer[] quantities) {
+
+        // Ключи colorIds вместе с количествами из quantities, quantities == null - только ключи
+        static KeyArrays sorted(Map<SockKey, Integer> colorIds, Map<SockKey, Integer> quantities) {
+            List<SockKey> keys = new ArrayList<>(colorIds.keySet());
+            keys.sort(Comparator.comparing((SockKey key) -> colorIds.get(key)).thenComparingInt(SockKey::cottonPercentage));
+            int size = keys.size();
+            KeyArrays arrays = new KeyArrays(new Integer[size], new Integer[size], quantities == null ? null : new Integer[size]);
+            for (int i = 0; i < size; i++) {
+                SockKey key = keys.get(i);
+                arrays.colorIds[i] = colorIds.get(key);
+                arrays.cottonPercentages[i] = key.cottonPercentage();
+                if (quantities != null) {
+                    arrays.quantities[i] = quantities.get(key);
+                }
+            }
+            return arrays;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.example.service;
+
+import org.example.exception.CsvLineException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+// Разбор CSV прямо по байтам UTF-8: без String на каждую строку, без split и Integer.parseInt.
+// Цвета проходят через небольшой словарь, поэтому одинаковые цвета дают один и тот же экземпляр String,
+// уже нормализованный - политика применяется один раз на цвет, а не на строку.
+// Экземпляр не потокобезопасен - один парсер на один файл
+final class CsvByteParser {
+
+    interface RowHandler {
+        void onRow(String color, int cottonPercentage, int quantity);
+    }
+
+    // Получает ошибочные строки вместо исключения, разбор при этом продолжается
+    interface ErrorHandler {
+        void onError(long lineNumber, String rawLine, String reason);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Сколько байт ошибочной строки попадает в отчет
+    private static final int RAW_LINE_LIMIT = 512;
+
+    private final ColorInterner colors;
+    private final ErrorHandler errorHandler;
+    // Номер последней разобранной строки
+    private long lineNumber;
+
+    CsvByteParser() {
+        this(null, UnaryOperator.identity());
+    }
+
+    // errorHandler == null - первая ошибочная строка прерывает разбор исключением
+    CsvByteParser(ErrorHandler errorHandler, UnaryOperator<String> colorNormalizer) {
+        this.errorHandler = errorHandler;
+        this.colors = new ColorInterner(colorNormalizer);
+    }
+
+    long getLineNumber() {
+        return lineNumber;
+    }
+
+    void parse(InputStream in, RowHandler handler) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        ByteBuffer view = ByteBuffer.wrap(buf);
+        int start = 0;
+        int limit = 0;
+        while (true) {
+            int read = in.read(buf, limit, buf.length - limit);
+            boolean eof = read < 0;
+            if (!eof) {
+                limit += read;
+            }
+            start = parseLines(view, start, limit, eof, handler);
+            if (eof) {
+                return;
+            }
+            // Незавершенную строку переношу в начало буфера
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, limit - start);
+                limit -= start;
+                start = 0;
+            }
+            // Строка длиннее буфера
+            if (limit == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+                view = ByteBuffer.wrap(buf);
+            }
+        }
+    }
+
+    // Разбирает все целые строки в [start, limit), возвращает начало первой незавершенной строки.
+    // Окончания строк как у BufferedReader.readLine: \n, \r или \r\n
+    int parseLines(ByteBuffer buf, int start, int limit, boolean eof, RowHandler handler) {
+        int lineStart = start;
+        int i = start;
+        while (i < limit) {
+            byte b = buf.get(i);
+            if (b != '\n' && b != '\r') {
+                i++;
+                continue;
+            }
+            if (b == '\r' && i + 1 == limit && !eof) {
+                // Не видно, идет ли следом \n - дочитываю
+                return lineStart;
+            }
+            parseLine(buf, lineStart, i, handler);
+            i += (b == '\r' && i + 1 < limit && buf.get(i + 1) == '\n') ? 2 : 1;
+            lineStart = i;
+        }
+        if (eof && lineStart < limit) {
+            parseLine(buf, lineStart, limit, handler);
+            return limit;
+        }
+        return lineStart;
+    }
+
+    private void parseLine(ByteBuffer buf, int from, int to, RowHandler handler) {
+        lineNumber++;
+        if (errorHandler == null) {
+            parseRow(buf, from, to, handler);
+            return;
+        }
+        try {
+            parseRow(buf, from, to, handler);
+        } catch (CsvLineException e) {
+            errorHandler.onError(lineNumber, decode(buf, from, Math.min(to, from + RAW_LINE_LIMIT)), e.getReason());
+        }
+    }
+
+    private void parseRow(ByteBuffer buf, int from, int to, RowHandler handler) {
+        // Пустые столбцы в конце строки не считаются, как у String.split
+        int end = to;
+        while (end > from && buf.get(end - 1) == ',') {
+            end--;
+        }
+        int firstComma = -1;
+        int secondComma = -1;
+        int commas = 0;
+        for (int i = from; i < end; i++) {
+            if (buf.get(i) == ',') {
+                if (commas == 0) {
+                    firstComma = i;
+                } else if (commas == 1) {
+                    secondComma = i;
+                }
+                commas++;
+            }
+        }
+        int columns = end > from ? commas + 1 : (to > from ? 0 : 1);
+        if (columns != 3) {
+            throw new CsvLineException(lineNumber, "Ожидалось 3 столбца, но получено " + columns);
+        }
+        int cottonPercentage = parseInt(buf, firstComma + 1, secondComma, from, to);
+        int quantity = parseInt(buf, secondComma + 1, end, from, to);
+        handler.onRow(colors.intern(buf, from, firstComma), cottonPercentage, quantity);
+    }
+
+    // Те же правила, что у Integer.parseInt: необязательный знак, только цифры, без переполнения
+    private int parseInt(ByteBuffer buf, int from, int to, int lineFrom, int lineTo) {
+        if (from >= to) {
+            throw positionError(buf, lineFrom, lineTo);
+        }
+        int i = from;
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+        byte first = buf.get(i);
+        if (first == '-' || first == '+') {
+            if (first == '-') {
+                negative = true;
+                limit = Integer.MIN_VALUE;
+            }
+            if (++i == to) {
+                throw positionError(buf, lineFrom, lineTo);
+            }
+        }
+        int multmin = limit / 10;
+        int result = 0;
+        for (; i < to; i++) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                throw positionError(buf, lineFrom, lineTo);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw positionError(buf, lineFrom, lineTo);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    // Строка декодируется только для сообщения об ошибке
+    private CsvLineException positionError(ByteBuffer buf, int from, int to) {
+        return new CsvLineException(lineNumber, "Позиция : " + decode(buf, from, to));
+    }
+
+    private static String decode(ByteBuffer buf, int from, int to) {
+        byte[] line = new byte[to - from];
+        buf.get(from, line);
+        return new String(line, StandardCharsets.UTF_8);
+    }
+
+    // Словарь цветов с открытой адресацией по байтам цвета. Заполняется не больше чем наполовину,
+    // дальше новые цвета просто создаются без запоминания
+    private static final class ColorInterner {
+
+        private static final int CAPACITY = 1024;
+        private static final int MAX_SIZE = CAPACITY / 2;
+
+        private final byte[][] keys = new byte[CAPACITY][];
+        private final String[] values = new String[CAPACITY];
+        private final UnaryOperator<String> normalizer;
+        private int size;
+
+        ColorInterner(UnaryOperator<String> normalizer) {
+            this.normalizer = normalizer;
+        }
+
+        String intern(ByteBuffer buf, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + buf.get(i);
+            }
+            int slot = (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+            byte[] key;
+            while ((key = keys[slot]) != null) {
+                if (matches(key, buf, from, to)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & (CAPACITY - 1);
+            }
+            byte[] bytes = new byte[to - from];
+            buf.get(from, bytes);
+            String color = normalizer.apply(new String(bytes, StandardCharsets.UTF_8));
+            if (size < MAX_SIZE) {
+                keys[slot] = bytes;
+                values[slot] = color;
+                size++;
+            }
+            return color;
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buf, int from, int to) {
+            if (key.length != to - from) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buf.get(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
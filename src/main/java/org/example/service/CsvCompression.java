@@ -0,0 +1,57 @@
+package org.example.service;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+// Сжатие загруженного CSV определяется по имени файла. Распаковка идет потоком при разборе,
+// распакованная копия файла нигде не создается
+enum CsvCompression {
+
+    NONE(".csv", Set.of("text/csv", "application/vnd.ms-excel")),
+    GZIP(".csv.gz", Set.of("application/gzip", "application/x-gzip", "application/octet-stream")),
+    ZSTD(".csv.zst", Set.of("application/zstd", "application/octet-stream"));
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String suffix;
+    private final Set<String> contentTypes;
+
+    CsvCompression(String suffix, Set<String> contentTypes) {
+        this.suffix = suffix;
+        this.contentTypes = contentTypes;
+    }
+
+    // null - имя файла не похоже на CSV
+    static CsvCompression of(String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        for (CsvCompression compression : values()) {
+            if (fileName.endsWith(compression.suffix)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    static boolean isCompressed(String fileName) {
+        CsvCompression compression = of(fileName);
+        return compression != null && compression != NONE;
+    }
+
+    boolean accepts(String contentType) {
+        return contentType != null && contentTypes.contains(contentType);
+    }
+
+    InputStream decode(InputStream in) throws IOException {
+        return switch (this) {
+            case NONE -> in;
+            case GZIP -> new GZIPInputStream(in, BUFFER_SIZE);
+            case ZSTD -> new ZstdInputStream(in);
+        };
+    }
+}
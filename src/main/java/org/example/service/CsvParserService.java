@@ -1,74 +1,157 @@
 package org.example.service;
 
+import lombok.RequiredArgsConstructor;
+import org.example.config.ColorProperties;
+import org.example.dto.StockChunk;
+import org.example.exception.CsvLineException;
 import org.example.dto.StockDto;
-import org.example.dto.SockDto;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartException;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.function.Consumer;
 
 @Service
+@RequiredArgsConstructor
 public class CsvParserService {
 
-    public List<StockDto> parseCsvFile(MultipartFile file) throws Exception {
+    // Размер порции при разборе файла целиком в список
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+    // Окно отображения файла в память
+    private static final int MAPPED_WINDOW_SIZE = 128 << 20;
 
-        if (!isCsvFile(file)) {
-            throw new MultipartException("Файл: " + file.getOriginalFilename() + " имеет неподдерживаемый формат ");
-        }
+    // Цвета строк приводятся к политике словаря цветов уже при разборе
+    private final ColorProperties colorProperties;
+
+    public List<StockDto> parseCsvFile(MultipartFile file) throws Exception {
 
         List<StockDto> stockDtoList = new ArrayList<>();
+        parseCsvFile(file, DEFAULT_CHUNK_SIZE, chunk -> stockDtoList.addAll(chunk.toStockDtoList()));
+        return stockDtoList;
+    }
 
-        // Делаю парсинг CSV файла
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                StockDto stockDto = getSockDto(line);
-                stockDtoList.add(stockDto);
-            }
-        }
-        catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException(e.getMessage());
+    // Потоковый разбор: строки отдаются порциями по chunkSize, весь файл в памяти не держится
+    public void parseCsvFile(MultipartFile file, int chunkSize, Consumer<StockChunk> chunkConsumer) throws Exception {
+        parseCsvFile(file, chunkSize, chunkConsumer, null);
+    }
+
+    // errors != null - ошибочные строки пропускаются и собираются в errors, иначе первая из них прерывает разбор
+    public void parseCsvFile(MultipartFile file, int chunkSize, Consumer<StockChunk> chunkConsumer, ImportErrors errors) throws Exception {
+
+        checkCsvFile(file);
+
+        // Делаю парсинг CSV файла, сжатый файл распаковывается по ходу чтения
+        try (InputStream in = CsvCompression.of(file.getOriginalFilename()).decode(file.getInputStream())) {
+            parseCsv(in, chunkSize, chunkConsumer, errors);
         }
         catch (IOException e) {
             throw new IOException("Ошибка чтения файла: " + file.getOriginalFilename(), e);
         }
-        return stockDtoList;
     }
 
-    private static StockDto getSockDto(String line) {
-        String[] columns = line.split(",");
-        if (columns.length != 3) {
-            throw new IllegalArgumentException(" Ожидалось 3 столбца, но получено " + columns.length);
+    // Файл на диске, например сохраненная загрузка. Сжатие определяется по исходному имени файла,
+    // сжатый файл распаковывается потоком, несжатый разбирается из отображения в память
+    public void parseCsv(Path file, String fileName, int chunkSize, Consumer<StockChunk> chunkConsumer, ImportErrors errors) throws IOException {
+        if (!CsvCompression.isCompressed(fileName)) {
+            parseMappedCsv(file, chunkSize, chunkConsumer, errors);
+            return;
         }
-        try {
-            SockDto sockDto = new SockDto();
-            sockDto.setColor(columns[0]);
-            sockDto.setCottonPercentage(Integer.parseInt(columns[1])); // Процент хлопка
-            int quantity = Integer.parseInt(columns[2]); // Количество носок
-
-            StockDto stockDto = new StockDto();
-            stockDto.setSockDto(sockDto);
-            stockDto.setQuantity(quantity);
-            return stockDto;
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Позиция : " + line);
+        try (InputStream in = CsvCompression.of(fileName).decode(Files.newInputStream(file))) {
+            parseCsv(in, chunkSize, chunkConsumer, errors);
         }
     }
 
+    public void parseCsv(InputStream in, int chunkSize, Consumer<StockChunk> chunkConsumer) throws IOException {
+        parseCsv(in, chunkSize, chunkConsumer, null);
+    }
+
+    public void parseCsv(InputStream in, int chunkSize, Consumer<StockChunk> chunkConsumer, ImportErrors errors) throws IOException {
+
+        ChunkBuilder chunks = new ChunkBuilder(chunkSize, chunkConsumer);
+        new CsvByteParser(errors, colorProperties::normalize).parse(in, chunks);
+        chunks.flush();
+    }
+
+    // Несжатый файл на диске разбирается прямо из отображения в память, байты файла в heap не копируются
+    public void parseMappedCsv(Path file, int chunkSize, Consumer<StockChunk> chunkConsumer, ImportErrors errors) throws IOException {
+        parseMappedCsv(file, chunkSize, chunkConsumer, errors, MAPPED_WINDOW_SIZE);
+    }
+
+    // Файл отображается окнами: незавершенная строка в конце окна разбирается из следующего окна
+    void parseMappedCsv(Path file, int chunkSize, Consumer<StockChunk> chunkConsumer, ImportErrors errors, int windowSize) throws IOException {
+
+        CsvByteParser parser = new CsvByteParser(errors, colorProperties::normalize);
+        ChunkBuilder chunks = new ChunkBuilder(chunkSize, chunkConsumer);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            int window = windowSize;
+            while (position < size) {
+                int length = (int) Math.min(window, size - position);
+                boolean eof = position + length == size;
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int consumed = parser.parseLines(buf, 0, length, eof, chunks);
+                if (consumed == 0 && !eof) {
+                    // Строка длиннее окна
+                    if (window == Integer.MAX_VALUE) {
+                        throw new CsvLineException(parser.getLineNumber() + 1, "Строка длиннее " + Integer.MAX_VALUE + " байт");
+                    }
+                    window = (int) Math.min(2L * window, Integer.MAX_VALUE);
+                    continue;
+                }
+                position += consumed;
+            }
+        }
+        chunks.flush();
+    }
+
+    public void checkCsvFile(MultipartFile file) {
+        if (!isCsvFile(file)) {
+            throw new MultipartException("Файл: " + file.getOriginalFilename() + " имеет неподдерживаемый формат ");
+        }
+    }
+
+    // .csv, а также сжатые .csv.gz и .csv.zst
     public boolean isCsvFile(MultipartFile file) {
-        String contentType = file.getContentType();
+        CsvCompression compression = CsvCompression.of(file.getOriginalFilename());
+        return compression != null && compression.accepts(file.getContentType());
+    }
+
+    // Собирает разобранные строки в порции и отдает каждую заполненную
+    private static class ChunkBuilder implements CsvByteParser.RowHandler {
+
+        private final int chunkSize;
+        private final Consumer<StockChunk> chunkConsumer;
+        private StockChunk chunk;
+
+        ChunkBuilder(int chunkSize, Consumer<StockChunk> chunkConsumer) {
+            this.chunkSize = chunkSize;
+            this.chunkConsumer = chunkConsumer;
+            this.chunk = new StockChunk(chunkSize);
+        }
 
-        if (!contentType.equals("text/csv") && !contentType.equals("application/vnd.ms-excel")) {
-            return  false;
+        @Override
+        public void onRow(String color, int cottonPercentage, int quantity) {
+            chunk.add(color, cottonPercentage, quantity);
+            if (chunk.isFull()) {
+                chunkConsumer.accept(chunk);
+                chunk = new StockChunk(chunkSize);
+            }
+        }
+
+        void flush() {
+            if (!chunk.isEmpty()) {
+                chunkConsumer.accept(chunk);
+            }
         }
-        String filename = file.getOriginalFilename();
-        return filename != null && filename.endsWith(".csv");
     }
 }
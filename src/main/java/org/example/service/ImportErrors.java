@@ -0,0 +1,34 @@
+package org.example.service;
+
+import org.example.dto.ImportErrorDto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Ошибочные строки, собранные за один проход по файлу. Хранится не больше limit записей, остальные только считаются
+public class ImportErrors implements CsvByteParser.ErrorHandler {
+
+    private final int limit;
+    private final List<ImportErrorDto> errors = new ArrayList<>();
+    private long count;
+
+    public ImportErrors(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public synchronized void onError(long lineNumber, String rawLine, String reason) {
+        count++;
+        if (errors.size() < limit) {
+            errors.add(new ImportErrorDto(lineNumber, rawLine, reason));
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized List<ImportErrorDto> getErrors() {
+        return new ArrayList<>(errors);
+    }
+}
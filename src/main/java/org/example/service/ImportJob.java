@@ -0,0 +1,108 @@
+package org.example.service;
+
+import org.example.dto.ImportJobDto;
+import org.example.dto.ImportMode;
+import org.example.dto.ImportReportDto;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Фоновая задача импорта. Счетчики обновляют потоки разбора и записи, читают запросы состояния
+class ImportJob implements StockImportService.ImportProgress {
+
+    private final String id;
+    private final String tenant;
+    private final String fileName;
+    private final ImportMode mode;
+    private final Path spool;
+    private final Instant submittedAt = Instant.now();
+    private final AtomicLong rowsParsed = new AtomicLong();
+    private final AtomicLong rowsApplied = new AtomicLong();
+
+    private volatile ImportJobDto.Status status = ImportJobDto.Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile ImportReportDto report;
+
+    ImportJob(String id, String tenant, String fileName, ImportMode mode, Path spool) {
+        this.id = id;
+        this.tenant = tenant;
+        this.fileName = fileName;
+        this.mode = mode;
+        this.spool = spool;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getTenant() {
+        return tenant;
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    ImportMode getMode() {
+        return mode;
+    }
+
+    Path getSpool() {
+        return spool;
+    }
+
+    Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    @Override
+    public void parsed(long rows) {
+        rowsParsed.addAndGet(rows);
+    }
+
+    @Override
+    public void applied(long rows) {
+        rowsApplied.addAndGet(rows);
+    }
+
+    void started() {
+        startedAt = Instant.now();
+        status = ImportJobDto.Status.RUNNING;
+    }
+
+    void completed(ImportReportDto report) {
+        this.report = report;
+        finishedAt = Instant.now();
+        status = ImportJobDto.Status.COMPLETED;
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finishedAt = Instant.now();
+        status = ImportJobDto.Status.FAILED;
+    }
+
+    ImportJobDto toDto() {
+        ImportJobDto dto = new ImportJobDto();
+        dto.setId(id);
+        dto.setFileName(fileName);
+        dto.setMode(mode.getValue());
+        dto.setStatus(status);
+        dto.setRowsParsed(rowsParsed.get());
+        dto.setRowsApplied(rowsApplied.get());
+        dto.setSubmittedAt(submittedAt);
+        dto.setStartedAt(startedAt);
+        dto.setFinishedAt(finishedAt);
+        dto.setError(error);
+        dto.setReport(report);
+        if (startedAt != null) {
+            long millis = Duration.between(startedAt, finishedAt == null ? Instant.now() : finishedAt).toMillis();
+            dto.setRowsPerSecond(millis == 0 ? 0 : dto.getRowsApplied() * 1000 / millis);
+        }
+        return dto;
+    }
+}
@@ -0,0 +1,167 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.ImportProperties;
+import org.example.dto.ImportJobDto;
+import org.example.dto.ImportMode;
+import org.example.exception.ImportJobNotFoundException;
+import org.example.exception.TooManyImportJobsException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Фоновый импорт больших файлов: загрузка сохраняется во временный файл и сразу отвечает id задачи,
+// импорт идет в ограниченном пуле. У каждого клиента не больше tenant-concurrency задач одновременно,
+// остальные ждут в его очереди и не занимают потоки пула. Клиент берется из заголовка без аутентификации,
+// поэтому собственный лимит есть только у клиентов из socks.import.tenants, остальные делят лимит default
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ImportJobService {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private final StockImportService stockImportService;
+    private final CsvParserService csvParserService;
+    private final ImportProperties importProperties;
+    @Qualifier("importJobExecutor")
+    private final TaskExecutor importJobExecutor;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    // Доступ только под synchronized. Не больше tenants + 1 записей, запись удаляется, когда у клиента нет задач
+    private final Map<String, TenantJobs> tenants = new HashMap<>();
+
+    public ImportJobDto submit(MultipartFile file, String tenant) throws IOException {
+        return submit(file, tenant, ImportMode.APPLY);
+    }
+
+    public ImportJobDto submit(MultipartFile file, String tenant, ImportMode mode) throws IOException {
+        csvParserService.checkCsvFile(file);
+        tenant = importProperties.getTenants().contains(tenant) ? tenant : DEFAULT_TENANT;
+        // Временный файл загрузки удаляется по окончании запроса, поэтому копирую его
+        Path spool = Files.createTempFile("socks-import-", ".csv");
+        try {
+            file.transferTo(spool);
+            ImportJob job = new ImportJob(UUID.randomUUID().toString(), tenant, file.getOriginalFilename(), mode, spool);
+            jobs.put(job.getId(), job);
+            try {
+                enqueue(job);
+            } catch (RuntimeException e) {
+                jobs.remove(job.getId());
+                throw e;
+            }
+            log.info("Задача импорта {} файла {} клиента {} принята", job.getId(), job.getFileName(), tenant);
+            return job.toDto();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+    }
+
+    public ImportJobDto getJob(String id) {
+        ImportJob job = jobs.get(id);
+        if (job == null) {
+            throw new ImportJobNotFoundException(id);
+        }
+        return job.toDto();
+    }
+
+    private synchronized void enqueue(ImportJob job) {
+        TenantJobs tenant = tenants.computeIfAbsent(job.getTenant(), t -> new TenantJobs());
+        if (tenant.running < importProperties.getTenantConcurrency()) {
+            tenant.running++;
+            try {
+                dispatch(job);
+            } catch (RuntimeException e) {
+                if (--tenant.running == 0 && tenant.waiting.isEmpty()) {
+                    tenants.remove(job.getTenant());
+                }
+                throw e;
+            }
+        } else if (tenant.waiting.size() < importProperties.getTenantQueueCapacity()) {
+            tenant.waiting.add(job);
+        } else {
+            throw new TooManyImportJobsException("У клиента " + job.getTenant() + " уже ожидают " +
+                    tenant.waiting.size() + " задач");
+        }
+    }
+
+    // Задача клиента закончилась - запускаю следующую из его очереди
+    private synchronized void finished(ImportJob job) {
+        TenantJobs tenant = tenants.get(job.getTenant());
+        ImportJob next;
+        while ((next = tenant.waiting.poll()) != null) {
+            try {
+                dispatch(next);
+                return;
+            } catch (TooManyImportJobsException e) {
+                next.failed(e.getMessage());
+                deleteSpool(next);
+            }
+        }
+        if (--tenant.running == 0) {
+            tenants.remove(job.getTenant());
+        }
+    }
+
+    private void dispatch(ImportJob job) {
+        try {
+            importJobExecutor.execute(() -> run(job));
+        } catch (TaskRejectedException e) {
+            throw new TooManyImportJobsException("Пул задач импорта переполнен");
+        }
+    }
+
+    private void run(ImportJob job) {
+        job.started();
+        try {
+            if (job.getMode() == ImportMode.APPLY) {
+                stockImportService.importCsv(job.getSpool(), job.getFileName(), job);
+                job.completed(null);
+            } else {
+                job.completed(stockImportService.importCsv(job.getSpool(), job.getFileName(), job.getMode(), job));
+            }
+        } catch (Exception e) {
+            log.error("Задача импорта {} файла {} завершилась ошибкой", job.getId(), job.getFileName(), e);
+            job.failed(e.getMessage());
+        } finally {
+            deleteSpool(job);
+            finished(job);
+        }
+    }
+
+    private static void deleteSpool(ImportJob job) {
+        try {
+            Files.deleteIfExists(job.getSpool());
+        } catch (IOException ex) {
+            log.warn("Не удалось удалить временный файл {}", job.getSpool(), ex);
+        }
+    }
+
+    // Состояние завершенных задач хранится job-retention, потом удаляется
+    @Scheduled(fixedDelayString = "${socks.import.job-retention:PT1H}")
+    public void evictFinishedJobs() {
+        Instant expired = Instant.now().minus(importProperties.getJobRetention());
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(expired));
+    }
+
+    private static class TenantJobs {
+        private int running;
+        private final Deque<ImportJob> waiting = new ArrayDeque<>();
+    }
+}
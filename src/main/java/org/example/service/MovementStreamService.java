@@ -0,0 +1,212 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.ImportProperties;
+import org.example.dto.MovementAckDto;
+import org.example.dto.MovementRejectionDto;
+import org.example.dto.SockKey;
+import org.example.dto.StockMovement;
+import org.example.exception.InsufficientStockException;
+import org.example.exception.NotFoundProductException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Поток движений в формате NDJSON: строка {"color":"red","cottonPercentage":50,"quantity":-3},
+// положительное количество - поступление, отрицательное - отгрузка. Строки разбираются потоковым парсером
+// Jackson по мере поступления, каждая порция применяется своей транзакцией и сразу подтверждается строкой ответа
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class MovementStreamService {
+
+    private final StockService stockService;
+    private final ImportProperties importProperties;
+    private final ObjectMapper objectMapper;
+
+    public void process(InputStream in, OutputStream out) throws IOException {
+        Chunk chunk = new Chunk(1);
+        long lines = 0;
+        long applied = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                long line = parser.getTokenLocation().getLineNr();
+                lines++;
+                chunk.add(line, parseMovement(parser, token));
+                if (chunk.size() >= importProperties.getMovementChunkSize()) {
+                    applied += apply(chunk, out);
+                    chunk = new Chunk(chunk.number + 1);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // После синтаксической ошибки границу следующей строки не найти, принятое до нее применяется
+            long errorChunk = chunk.size() == 0 ? chunk.number : chunk.number + 1;
+            applied += apply(chunk, out);
+            MovementAckDto ack = new MovementAckDto();
+            ack.setChunk(errorChunk);
+            ack.setRejected(List.of());
+            ack.setError("Строка " + e.getLocation().getLineNr() + ". Некорректный JSON: " + e.getOriginalMessage());
+            write(ack, out);
+            log.warn("Поток движений прерван на строке {}: {}", e.getLocation().getLineNr(), e.getOriginalMessage());
+            return;
+        }
+        applied += apply(chunk, out);
+        log.info("Поток движений обработан, строк: {}, применено: {}", lines, applied);
+    }
+
+    // Движение или причина отказа для одной строки. Парсер остается на конце значения строки
+    private static ParsedLine parseMovement(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return ParsedLine.rejected("Ожидался объект движения");
+        }
+        String color = null;
+        Integer cottonPercentage = null;
+        Integer quantity = null;
+        String reason = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "color" -> {
+                    if (value == JsonToken.VALUE_STRING) {
+                        color = parser.getText();
+                    }
+                }
+                case "cottonPercentage" -> {
+                    if (isInt(parser, value)) {
+                        cottonPercentage = parser.getIntValue();
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        reason = "Поле cottonPercentage должно быть целым числом";
+                    }
+                }
+                case "quantity" -> {
+                    if (isInt(parser, value)) {
+                        quantity = parser.getIntValue();
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        reason = "Поле quantity должно быть целым числом";
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        if (reason != null) {
+            return ParsedLine.rejected(reason);
+        }
+        // Те же ограничения, что у SearchStockDto в /income и /outcome, только со знаком у количества
+        if (color == null || color.isBlank()) {
+            return ParsedLine.rejected("Поле color - обязательно для заполнения");
+        }
+        if (cottonPercentage == null) {
+            return ParsedLine.rejected("Поле cottonPercentage - обязательно для заполнения");
+        }
+        if (cottonPercentage < 0 || cottonPercentage > 100) {
+            return ParsedLine.rejected("Значение поля cottonPercentage должно быть от 0 до 100");
+        }
+        if (quantity == null || quantity == 0 || quantity == Integer.MIN_VALUE) {
+            return ParsedLine.rejected("Поле quantity - обязательно, не 0: больше 0 - поступление, меньше 0 - отгрузка");
+        }
+        return new ParsedLine(new StockMovement(new SockKey(color, cottonPercentage), quantity), null);
+    }
+
+    private static boolean isInt(JsonParser parser, JsonToken value) throws IOException {
+        return value == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == JsonParser.NumberType.INT;
+    }
+
+    // Применяет движения порции и пишет подтверждение, возвращает число примененных
+    private int apply(Chunk chunk, OutputStream out) throws IOException {
+        if (chunk.size() == 0) {
+            return 0;
+        }
+        List<RuntimeException> results = chunk.movements.isEmpty()
+                ? List.of()
+                : stockService.applyMovements(chunk.movements);
+        List<MovementRejectionDto> rejected = new ArrayList<>(chunk.rejected);
+        int applied = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                applied++;
+            } else {
+                rejected.add(new MovementRejectionDto(chunk.movementLines.get(i), reasonOf(results.get(i))));
+            }
+        }
+        rejected.sort(Comparator.comparingLong(MovementRejectionDto::getLine));
+
+        MovementAckDto ack = new MovementAckDto();
+        ack.setChunk(chunk.number);
+        ack.setFirstLine(chunk.firstLine);
+        ack.setLastLine(chunk.lastLine);
+        ack.setApplied(applied);
+        ack.setRejected(rejected);
+        write(ack, out);
+        log.debug("Порция движений {} применена: {}, отклонено: {}", chunk.number, applied, rejected.size());
+        return applied;
+    }
+
+    // Тексты как у GlobalExceptionHandler для тех же отказов в /outcome
+    private static String reasonOf(RuntimeException rejection) {
+        if (rejection instanceof NotFoundProductException) {
+            return "Товар" + rejection.getMessage() + " не найден";
+        }
+        if (rejection instanceof InsufficientStockException) {
+            return "Нехватка носков на складе. " + rejection.getMessage();
+        }
+        return rejection.getMessage();
+    }
+
+    // Каждое подтверждение уходит клиенту сразу, не дожидаясь конца потока
+    private void write(MovementAckDto ack, OutputStream out) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(ack));
+        out.write('\n');
+        out.flush();
+    }
+
+    private record ParsedLine(StockMovement movement, String reason) {
+
+        static ParsedLine rejected(String reason) {
+            return new ParsedLine(null, reason);
+        }
+    }
+
+    private static class Chunk {
+
+        private final long number;
+        private final List<StockMovement> movements = new ArrayList<>();
+        private final List<Long> movementLines = new ArrayList<>();
+        private final List<MovementRejectionDto> rejected = new ArrayList<>();
+        private long firstLine;
+        private long lastLine;
+
+        Chunk(long number) {
+            this.number = number;
+        }
+
+        void add(long line, ParsedLine parsed) {
+            if (size() == 0) {
+                firstLine = line;
+            }
+            lastLine = line;
+            if (parsed.movement() != null) {
+                movements.add(parsed.movement());
+                movementLines.add(line);
+            } else {
+                rejected.add(new MovementRejectionDto(line, parsed.reason()));
+            }
+        }
+
+        int size() {
+            return movements.size() + rejected.size();
+        }
+    }
+}
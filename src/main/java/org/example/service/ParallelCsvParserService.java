@@ -0,0 +1,158 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.dto.SockKey;
+import org.example.exception.CsvLineException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Параллельный разбор файла на диске: файл делится по границам строк на сегменты, каждый сегмент
+// разбирается в ForkJoinPool в свою частичную сумму по товару, потом частичные суммы складываются.
+// Номера строк в ошибках считаются от начала файла, как при последовательном разборе
+@Service
+@RequiredArgsConstructor
+public class ParallelCsvParserService {
+
+    // Мелкие файлы не дробятся, накладные расходы на сегмент больше выигрыша
+    private static final long MIN_SEGMENT_SIZE = 1 << 20;
+    private static final long MAX_SEGMENT_SIZE = 256 << 20;
+    // Сегмент отображается в память окнами: сегмент до следующего перевода строки может быть длиннее int
+    private static final int MAPPED_WINDOW_SIZE = 128 << 20;
+    // Сегментов больше, чем потоков, что бы освободившиеся потоки забирали оставшуюся работу
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    @Qualifier("csvParserPool")
+    private final ForkJoinPool csvParserPool;
+
+    public record Result(Map<SockKey, Integer> quantities, long rows) {
+    }
+
+    public Result parse(Path file) throws IOException {
+        return parse(file, MAPPED_WINDOW_SIZE);
+    }
+
+    Result parse(Path file, int windowSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<ForkJoinTask<SegmentResult>> tasks = new ArrayList<>();
+            for (Segment segment : split(channel)) {
+                tasks.add(csvParserPool.submit(() -> parseSegment(channel, segment, windowSize)));
+            }
+            return merge(tasks);
+        }
+    }
+
+    List<Segment> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long segmentSize = size / ((long) csvParserPool.getParallelism() * SEGMENTS_PER_THREAD) + 1;
+        segmentSize = Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, segmentSize));
+        List<Segment> segments = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = start + segmentSize >= size ? size : nextLineStart(channel, start + segmentSize, size);
+            segments.add(new Segment(start, end));
+            start = end;
+        }
+        return segments;
+    }
+
+    // Начало строки, следующей за ближайшим \n или \r, как их понимает CsvByteParser. Граница не разрывает
+    // ни строку, ни пару \r\n
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        boolean afterCr = false;
+        while (position < size) {
+            buf.clear();
+            int read = channel.read(buf, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buf.get(i);
+                if (afterCr) {
+                    // \r в конце прочитанного - граница после него или после следующего за ним \n
+                    return b == '\n' ? position + i + 1 : position + i;
+                }
+                if (b == '\n') {
+                    return position + i + 1;
+                }
+                afterCr = b == '\r';
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Сегмент кончается на границе строки, поэтому его конец для парсера - конец файла
+    private static SegmentResult parseSegment(FileChannel channel, Segment segment, int windowSize) {
+        CsvByteParser parser = new CsvByteParser();
+        Map<SockKey, Integer> quantities = new HashMap<>();
+        CsvByteParser.RowHandler handler = (color, cottonPercentage, quantity) ->
+                quantities.merge(new SockKey(color, cottonPercentage), quantity, Math::addExact);
+        try {
+            long position = segment.start();
+            int window = windowSize;
+            while (position < segment.end()) {
+                int length = (int) Math.min(window, segment.end() - position);
+                boolean eof = position + length == segment.end();
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int consumed = parser.parseLines(buf, 0, length, eof, handler);
+                if (consumed == 0 && !eof) {
+                    // Строка длиннее окна
+                    if (window == Integer.MAX_VALUE) {
+                        throw new CsvLineException(parser.getLineNumber() + 1, "Строка длиннее " + Integer.MAX_VALUE + " байт");
+                    }
+                    window = (int) Math.min(2L * window, Integer.MAX_VALUE);
+                    continue;
+                }
+                position += consumed;
+            }
+            return new SegmentResult(quantities, parser.getLineNumber(), null);
+        } catch (CsvLineException e) {
+            return new SegmentResult(null, 0, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Сегменты складываются по порядку, поэтому к ошибке сегмента известно число строк всех сегментов до него
+    private static Result merge(List<ForkJoinTask<SegmentResult>> tasks) throws IOException {
+        Map<SockKey, Integer> quantities = new HashMap<>();
+        long rows = 0;
+        for (ForkJoinTask<SegmentResult> task : tasks) {
+            SegmentResult segment;
+            try {
+                segment = task.join();
+            } catch (UncheckedIOException e) {
+                tasks.forEach(t -> t.cancel(false));
+                throw e.getCause();
+            }
+            if (segment.error() != null) {
+                tasks.forEach(t -> t.cancel(false));
+                throw new CsvLineException(rows + segment.error().getLineNumber(), segment.error().getReason());
+            }
+            segment.quantities().forEach((key, quantity) -> quantities.merge(key, quantity, Math::addExact));
+            rows += segment.lines();
+        }
+        return new Result(quantities, rows);
+    }
+
+    record Segment(long start, long end) {
+    }
+
+    private record SegmentResult(Map<SockKey, Integer> quantities, long lines, CsvLineException error) {
+    }
+}
@@ -0,0 +1,133 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.example.config.QuantityCacheProperties;
+import org.example.dto.CottonRange;
+import org.example.dto.SockKey;
+import org.example.event.SockUpdatedEvent;
+import org.example.event.StockChangedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Кеш ответов GET /api/socks: сумма остатков по цвету и диапазону хлопка.
+// В ключе - поколение цвета. Запись по цвету после коммита, еще до ответа клиенту, увеличивает поколение,
+// и следующие запросы идут мимо старых ответов. Ответ, посчитанный по данным до коммита, ложится под старое
+// поколение и после подтверждения записи уже не выдается. Старые ответы вытесняются по размеру и ttl.
+// Одинаковые запросы, пришедшие пока первый из них ждет БД, не идут в БД сами, а ждут его ответ
+@Component
+public class QuantityCache {
+
+    public static final String CACHE_NAME = "socks.quantity";
+    public static final String COALESCED_METRIC = "socks.quantity.coalesced";
+
+    private final QuantityCacheProperties properties;
+    private final Cache<Key, Optional<Integer>> cache;
+    // Поколения есть только у цветов, по которым были записи: запросы неизвестных цветов карту не растят
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    // Запросы в БД, которые сейчас выполняются. Ключ с поколением: запрос, пришедший после подтверждения
+    // записи, не присоединится к чтению, начатому до ее коммита
+    private final Map<Key, CompletableFuture<Integer>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    public QuantityCache(QuantityCacheProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        // cache.gets{result=hit|miss}, cache.evictions, cache.size в /actuator/prometheus
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.coalesced = Counter.builder(COALESCED_METRIC)
+                .description("Запросов остатка, дождавшихся чужого запроса в БД")
+                .register(meterRegistry);
+    }
+
+    // Сумма из кеша или от loader. null - в диапазоне нет товаров, такой ответ тоже кешируется
+    public Integer get(String color, CottonRange range, Supplier<Integer> loader) {
+        // Поколение читается до запроса в БД
+        Key key = new Key(color, generation(color), range);
+        if (properties.isEnabled()) {
+            Optional<Integer> cached = cache.getIfPresent(key);
+            if (cached != null) {
+                return cached.orElse(null);
+            }
+        }
+        return load(key, loader);
+    }
+
+    // Первый запрос по ключу идет в БД, остальные ждут его результат или его исключение.
+    // Не Caffeine get(key, loader): тот считает под блокировкой внутренней таблицы, и долгий запрос в БД
+    // задерживал бы соседние ключи
+    private Integer load(Key key, Supplier<Integer> loader) {
+        CompletableFuture<Integer> flight = new CompletableFuture<>();
+        CompletableFuture<Integer> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.increment();
+            return await(leader);
+        }
+        try {
+            Integer quantity = loader.get();
+            if (properties.isEnabled()) {
+                // В кеш до снятия из inFlight, что бы следующий запрос не пошел в БД повторно
+                cache.put(key, Optional.ofNullable(quantity));
+            }
+            flight.complete(quantity);
+            return quantity;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static Integer await(CompletableFuture<Integer> leader) {
+        try {
+            return leader.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public void invalidate(String color) {
+        generations.computeIfAbsent(color, c -> new AtomicLong()).incrementAndGet();
+    }
+
+    @TransactionalEventListener
+    public void onStockChanged(StockChangedEvent event) {
+        event.deltas().keySet().stream().map(SockKey::color).distinct().forEach(this::invalidate);
+    }
+
+    @TransactionalEventListener
+    public void onSockUpdated(SockUpdatedEvent event) {
+        invalidate(event.from().color());
+        invalidate(event.to().color());
+    }
+
+    private long generation(String color) {
+        AtomicLong generation = generations.get(color);
+        return generation == null ? 0 : generation.get();
+    }
+
+    private record Key(String color, long generation, CottonRange range) {
+    }
+}
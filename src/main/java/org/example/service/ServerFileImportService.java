@@ -0,0 +1,56 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.ImportProperties;
+import org.example.dto.ImportMode;
+import org.example.dto.ImportReportDto;
+import org.example.exception.ImportFileAccessException;
+import org.example.exception.ImportFileNotFoundException;
+import org.example.exception.InvalidFileTypeException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Импорт файла, который уже лежит на сервере, например ночная полная выгрузка остатков.
+// Файл не проходит через multipart: несжатый разбирается прямо из отображения в память
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ServerFileImportService {
+
+    private final StockImportService stockImportService;
+    private final ImportProperties importProperties;
+
+    public ImportReportDto importFile(String path, ImportMode mode) throws Exception {
+        Path file = resolve(path);
+        log.info("Импорт файла с сервера {} в режиме {}", file, mode.getValue());
+        return stockImportService.importCsv(file, file.getFileName().toString(), mode, StockImportService.ImportProgress.NONE);
+    }
+
+    // Путь берется относительно каталога импорта. Выйти из каталога нельзя ни через .., ни абсолютным путем,
+    // ни символической ссылкой - проверяется путь после раскрытия ссылок
+    Path resolve(String path) throws IOException {
+        if (importProperties.getDirectory() == null || importProperties.getDirectory().isBlank()) {
+            throw new ImportFileAccessException("Импорт файлов с сервера отключен");
+        }
+        Path root = Path.of(importProperties.getDirectory()).toRealPath();
+        Path file = root.resolve(path).normalize();
+        if (!file.startsWith(root)) {
+            throw new ImportFileAccessException(path + " вне каталога импорта");
+        }
+        if (!Files.isRegularFile(file)) {
+            throw new ImportFileNotFoundException(path);
+        }
+        Path realFile = file.toRealPath();
+        if (!realFile.startsWith(root)) {
+            throw new ImportFileAccessException(path + " вне каталога импорта");
+        }
+        if (CsvCompression.of(realFile.getFileName().toString()) == null) {
+            throw new InvalidFileTypeException(path + ", ожидается .csv, .csv.gz или .csv.zst");
+        }
+        return realFile;
+    }
+}
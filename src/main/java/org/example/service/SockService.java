@@ -3,12 +3,17 @@ package org.example.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.dto.SockDto;
+import org.example.dto.SockKey;
 import org.example.dto.UpdateSockDto;
 import org.example.entity.SockEntity;
+import org.example.event.SockUpdatedEvent;
 import org.example.exception.EntityAlreadyExistsException;
 import org.example.exception.NotFoundProductException;
+import org.example.repositories.ColorDictionary;
 import org.example.repositories.SockRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -18,8 +23,11 @@ import java.util.Optional;
 public class SockService {
 
     private final SockRepository sockRepositories;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ColorDictionary colorDictionary;
 
     // Обновляю товар
+    @Transactional
     public void updateSockEntity(Long id, UpdateSockDto sock) {
 
         // Ищу возможное совпадение по полям с другими носками
@@ -36,13 +44,18 @@ public class SockService {
         }
 
         SockEntity existingdSockEntity = optionalSockEntity.get();
-        log.info("Товар найден в БД: {}", existingdSockEntity);
+        log.debug("Товар найден в БД: {}", existingdSockEntity);
+        SockKey previousKey = new SockKey(existingdSockEntity.getColor(), existingdSockEntity.getCottonPercentage());
 
-        existingdSockEntity.setColor(sock.getColor());
+        // Новый цвет попадает в словарь до сохранения, товар хранит его id
+        String color = colorDictionary.normalize(sock.getColor());
+        colorDictionary.register(color);
+        existingdSockEntity.setColor(color);
         existingdSockEntity.setCottonPercentage(sock.getCottonPercentage());
 
         SockEntity updatedSockEntity = sockRepositories.save(existingdSockEntity);
         log.info("Товар c id {} с новыми параметрами {} сохранен успешно",id, updatedSockEntity);
+        eventPublisher.publishEvent(new SockUpdatedEvent(previousKey, new SockKey(color, sock.getCottonPercentage())));
     }
 
     // Проверяю есть ли товар
@@ -51,10 +64,10 @@ public class SockService {
         Optional<SockEntity> optionalSockEntity =
                 sockRepositories.findByColorAndCottonPercentage(sockDto.getColor(), sockDto.getCottonPercentage());
         if (optionalSockEntity.isEmpty()) {
-            log.info("Товар: {} НЕ найден в БД. ", sockDto);
+            log.debug("Товар: {} НЕ найден в БД. ", sockDto);
             throw new NotFoundProductException("цвет - " + sockDto.getColor() + ", содержание хлопка - " + sockDto.getCottonPercentage() + "%");
         }
-        log.info("Товар: {} найден в БД", sockDto.getColor());
+        log.debug("Товар: {} найден в БД", sockDto.getColor());
         return optionalSockEntity.get();
     }
 
@@ -65,12 +78,15 @@ public class SockService {
         Optional<SockEntity> optionalSockEntity =
                 sockRepositories.findByColorAndCottonPercentage(sockDto.getColor(), sockDto.getCottonPercentage());
         if (optionalSockEntity.isEmpty()) {
-            log.info("Товар: {} НЕ найден в БД. ", sockDto);
-            SockEntity sockEntity = sockRepositories.save(SockService.mapToEntity(sockDto));
-            log.info("Товар: {} создан в БД. ", sockEntity);
+            log.debug("Товар: {} НЕ найден в БД. ", sockDto);
+            SockEntity newSockEntity = SockService.mapToEntity(sockDto);
+            newSockEntity.setColor(colorDictionary.normalize(sockDto.getColor()));
+            colorDictionary.register(newSockEntity.getColor());
+            SockEntity sockEntity = sockRepositories.save(newSockEntity);
+            log.debug("Товар: {} создан в БД. ", sockEntity);
             return sockEntity;
         }
-        log.info("Товар: {} найден в БД", sockDto);
+        log.debug("Товар: {} найден в БД", sockDto);
 
         return optionalSockEntity.get();
     }
@@ -0,0 +1,296 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.AggregateIndexProperties;
+import org.example.dto.CottonRange;
+import org.example.event.SockUpdatedEvent;
+import org.example.event.StockChangedEvent;
+import org.example.repositories.StockRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+// Суммы остатков по цвету в памяти: на каждый цвет дерево Фенвика по проценту хлопка.
+// Загружается из БД при старте, дальше обновляется событиями записи после коммита.
+// Индекс локален для экземпляра приложения - при нескольких экземплярах, пишущих в одну БД, его включать нельзя
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StockAggregateIndex {
+
+    private final StockRepository stockRepository;
+    private final AggregateIndexProperties aggregateIndexProperties;
+
+    private final Map<String, ColorTree> colors = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    // Загрузка до старта веб-сервера, поэтому параллельных записей в этот момент нет
+    @PostConstruct
+    public void load() {
+        if (!aggregateIndexProperties.isEnabled()) {
+            return;
+        }
+        colors.clear();
+        stockRepository.forEachStock((color, cottonPercentage, quantity) ->
+                colors.computeIfAbsent(color, c -> new ColorTree()).add(cottonPercentage, quantity));
+        ready = true;
+        log.info("Индекс остатков загружен, цветов: {}", colors.size());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // null, если в диапазоне нет ни одного товара - так же, как SUM в БД
+    public Integer sumQuantity(String color, CottonRange range) {
+        ColorTree tree = colors.get(color);
+        if (tree == null || range.from() > range.to()) {
+            return null;
+        }
+        return tree.sum(ColorTree.bucketOf(range.from()), ColorTree.bucketOf(range.to()));
+    }
+
+    // Остатки цвета по проценту хлопка, нулевые не попадают. Неизвестный цвет - пустая гистограмма
+    public SortedMap<Integer, Integer> histogram(String color) {
+        ColorTree tree = colors.get(color);
+        return tree == null ? new TreeMap<>() : tree.histogram();
+    }
+
+    @TransactionalEventListener
+    public void onStockChanged(StockChangedEvent event) {
+        if (!ready) {
+            return;
+        }
+        event.deltas().forEach((key, delta) ->
+                colors.computeIfAbsent(key.color(), c -> new ColorTree()).add(key.cottonPercentage(), delta));
+    }
+
+    @TransactionalEventListener
+    public void onSockUpdated(SockUpdatedEvent event) {
+        if (!ready) {
+            return;
+        }
+        ColorTree from = colors.get(event.from().color());
+        Long quantity = from == null ? null : from.remove(event.from().cottonPercentage());
+        if (quantity != null) {
+            colors.computeIfAbsent(event.to().color(), c -> new ColorTree()).add(event.to().cottonPercentage(), quantity);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${socks.aggregate-index.check-interval:PT5M}")
+    public void scheduledConsistencyCheck() {
+        checkConsistency();
+    }
+
+    // Сверка с агрегатами в БД. Расхождение во время идущих записей возможно и не означает ошибку,
+    // стабильное расхождение между проверками - означает
+    public List<String> checkConsistency() {
+        if (!ready) {
+            return List.of();
+        }
+        Map<BucketKey, Long> database = new HashMap<>();
+        stockRepository.forEachStock((color, cottonPercentage, quantity) ->
+                database.merge(new BucketKey(color, ColorTree.bucketOf(cottonPercentage)), (long) quantity, Long::sum));
+
+        List<String> mismatches = new ArrayList<>();
+        database.forEach((key, quantity) -> {
+            ColorTree tree = colors.get(key.color());
+            Long indexed = tree == null ? null : tree.get(key.bucket());
+            if (!quantity.equals(indexed)) {
+                mismatches.add(key + ": индекс " + indexed + ", БД " + quantity);
+            }
+        });
+        colors.forEach((color, tree) -> {
+            for (int bucket = 0; bucket < ColorTree.BUCKETS; bucket++) {
+                Long indexed = tree.get(bucket);
+                if (indexed != null && !database.containsKey(new BucketKey(color, bucket))) {
+                    mismatches.add(new BucketKey(color, bucket) + ": индекс " + indexed + ", в БД нет");
+                }
+            }
+        });
+
+        if (mismatches.isEmpty()) {
+            log.debug("Индекс остатков совпадает с БД, корзин: {}", database.size());
+        } else {
+            log.warn("Индекс остатков расходится с БД: {}", mismatches);
+        }
+        return mismatches;
+    }
+
+    private record BucketKey(String color, int bucket) {
+
+        @Override
+        public String toString() {
+            return color + "/" + ColorTree.cottonOf(bucket);
+        }
+    }
+
+    // Дерево Фенвика по корзинам: 0 - хлопок меньше 0, 1..101 - от 0 до 100, 102 - больше 100.
+    // Крайние корзины нужны, потому что CSV не ограничивает процент хлопка, а SQL такие строки учитывает.
+    // В крайней корзине может быть несколько товаров, их остатки дополнительно хранятся по проценту хлопка
+    static final class ColorTree {
+
+        static final int BUCKETS = 103;
+
+        private final long[] quantityTree = new long[BUCKETS + 1];
+        private final int[] skuTree = new int[BUCKETS + 1];
+        private final long[] quantities = new long[BUCKETS];
+        private final int[] skus = new int[BUCKETS];
+        private final Map<Integer, Long> outliers = new HashMap<>();
+        private final StampedLock lock = new StampedLock();
+
+        static int bucketOf(int cottonPercentage) {
+            if (cottonPercentage < 0) {
+                return 0;
+            }
+            return cottonPercentage > 100 ? BUCKETS - 1 : cottonPercentage + 1;
+        }
+
+        static String cottonOf(int bucket) {
+            if (bucket == 0) {
+                return "<0";
+            }
+            return bucket == BUCKETS - 1 ? ">100" : String.valueOf(bucket - 1);
+        }
+
+        private static boolean isEdge(int bucket) {
+            return bucket == 0 || bucket == BUCKETS - 1;
+        }
+
+        void add(int cottonPercentage, long delta) {
+            int bucket = bucketOf(cottonPercentage);
+            long stamp = lock.writeLock();
+            try {
+                boolean newSku;
+                if (isEdge(bucket)) {
+                    newSku = !outliers.containsKey(cottonPercentage);
+                    outliers.merge(cottonPercentage, delta, Long::sum);
+                } else {
+                    newSku = skus[bucket] == 0;
+                }
+                if (newSku) {
+                    skus[bucket]++;
+                    update(skuTree, bucket, 1);
+                }
+                quantities[bucket] += delta;
+                update(quantityTree, bucket, delta);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // Убирает товар, возвращает его остаток или null, если товара не было
+        Long remove(int cottonPercentage) {
+            int bucket = bucketOf(cottonPercentage);
+            long stamp = lock.writeLock();
+            try {
+                long quantity;
+                if (isEdge(bucket)) {
+                    Long removed = outliers.remove(cottonPercentage);
+                    if (removed == null) {
+                        return null;
+                    }
+                    quantity = removed;
+                } else {
+                    if (skus[bucket] == 0) {
+                        return null;
+                    }
+                    quantity = quantities[bucket];
+                }
+                skus[bucket]--;
+                quantities[bucket] -= quantity;
+                update(skuTree, bucket, -1);
+                update(quantityTree, bucket, -quantity);
+                return quantity;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        SortedMap<Integer, Integer> histogram() {
+            SortedMap<Integer, Integer> histogram = new TreeMap<>();
+            long stamp = lock.readLock();
+            try {
+                // Проценты вне 0..100 лежат в крайних корзинах, их остатки берутся по товарам
+                outliers.forEach((cottonPercentage, quantity) -> {
+                    if (quantity != 0) {
+                        histogram.put(cottonPercentage, Math.toIntExact(quantity));
+                    }
+                });
+                for (int bucket = 1; bucket < BUCKETS - 1; bucket++) {
+                    if (skus[bucket] > 0 && quantities[bucket] != 0) {
+                        histogram.put(bucket - 1, Math.toIntExact(quantities[bucket]));
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            return histogram;
+        }
+
+        // Остаток корзины или null, если в ней нет товаров
+        Long get(int bucket) {
+            long stamp = lock.readLock();
+            try {
+                return skus[bucket] > 0 ? quantities[bucket] : null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        Integer sum(int fromBucket, int toBucket) {
+            long stamp = lock.tryOptimisticRead();
+            long quantity = prefix(quantityTree, toBucket) - prefix(quantityTree, fromBucket - 1);
+            long skuCount = prefix(skuTree, toBucket) - prefix(skuTree, fromBucket - 1);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    quantity = prefix(quantityTree, toBucket) - prefix(quantityTree, fromBucket - 1);
+                    skuCount = prefix(skuTree, toBucket) - prefix(skuTree, fromBucket - 1);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return skuCount == 0 ? null : Math.toIntExact(quantity);
+        }
+
+        private static void update(long[] tree, int bucket, long delta) {
+            for (int i = bucket + 1; i <= BUCKETS; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        private static void update(int[] tree, int bucket, int delta) {
+            for (int i = bucket + 1; i <= BUCKETS; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        private static long prefix(long[] tree, int bucket) {
+            long sum = 0;
+            for (int i = bucket + 1; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        private static long prefix(int[] tree, int bucket) {
+            long sum = 0;
+            for (int i = bucket + 1; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.ExportProperties;
+import org.example.dto.ExportFormat;
+import org.example.exception.BusinessLogicException;
+import org.example.repositories.StockRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Выгрузка всех остатков потоком: строки идут из курсора БД прямо в ответ, без сущностей и без списка в памяти,
+// поэтому память не зависит от числа товаров. Курсор живет только внутри транзакции, она только на чтение
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class StockExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // В CSV без кавычек цвет с запятой или переводом строки не прочитать обратно
+    private static final String CSV_UNSAFE_COLOR = "[,\r\n]";
+
+    private final StockRepository stockRepository;
+    private final ExportProperties exportProperties;
+    private final ObjectMapper objectMapper;
+
+    // Проверка до начала ответа, пока клиенту еще можно вернуть ошибку: CSV, из которого выпали бы товары,
+    // не отдается, такие цвета выгружает только ndjson
+    public void checkExportable(ExportFormat format) {
+        if (format == ExportFormat.CSV && stockRepository.existsStockWithColorMatching(CSV_UNSAFE_COLOR)) {
+            throw new BusinessLogicException("в цвете товара есть запятая или перевод строки, " +
+                    "без потерь остатки выгружает только format=ndjson");
+        }
+    }
+
+    // Возвращает число выгруженных строк
+    @Transactional(readOnly = true)
+    public long export(ExportFormat format, OutputStream out) throws IOException {
+        long rows;
+        try {
+            rows = format == ExportFormat.CSV ? exportCsv(out) : exportNdjson(out);
+        } catch (UncheckedIOException e) {
+            // Клиент отключился - курсор закрывается вместе с транзакцией
+            throw e.getCause();
+        }
+        log.info("Выгрузка остатков в {} завершена, строк: {}", format.getValue(), rows);
+        return rows;
+    }
+
+    private long exportCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long[] rows = new long[1];
+        stockRepository.forEachStock(exportProperties.getFetchSize(), (color, cottonPercentage, quantity) -> {
+            if (color.indexOf(',') >= 0 || color.indexOf('\n') >= 0 || color.indexOf('\r') >= 0) {
+                // Цвет появился после checkExportable. Ответ обрывается, что бы клиент не принял неполный файл за весь склад
+                throw new IllegalStateException("Выгрузка CSV прервана: цвет с запятой или переводом строки, " +
+                        "остатки без потерь выгружает format=ndjson");
+            }
+            try {
+                writer.write(color);
+                writer.write(',');
+                writer.write(Integer.toString(cottonPercentage));
+                writer.write(',');
+                writer.write(Integer.toString(quantity));
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows[0]++;
+        });
+        writer.flush();
+        return rows[0];
+    }
+
+    private long exportNdjson(OutputStream out) throws IOException {
+        long[] rows = new long[1];
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            // Поток ответа закрывает контейнер
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Объекты разделяются переводом строки, а не пробелом по умолчанию
+            generator.setRootValueSeparator(null);
+            stockRepository.forEachStock(exportProperties.getFetchSize(), (color, cottonPercentage, quantity) -> {
+                // Строка ndjson - поступление для /api/socks/movements, а движение 0 там отклоняется
+                if (quantity == 0) {
+                    return;
+                }
+                try {
+                    generator.writeStartObject();
+                    generator.writeStringField("color", color);
+                    generator.writeNumberField("cottonPercentage", cottonPercentage);
+                    generator.writeNumberField("quantity", quantity);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            });
+        }
+        return rows[0];
+    }
+}
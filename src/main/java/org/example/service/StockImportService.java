@@ -0,0 +1,337 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.ImportProperties;
+import org.example.dto.ImportMode;
+import org.example.dto.ImportReportDto;
+import org.example.dto.SockKey;
+import org.example.dto.StockChunk;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Потоковый импорт партии товаров: файл разбирается в отдельном потоке порциями,
+// порции через ограниченную очередь уходят на запись, пока разбирается следующая.
+// В режиме parse-mode: parallel файл сначала целиком разбирается на всех ядрах, потом записываются суммы по товарам.
+// В commit-mode file строки после первых bulk-threshold-rows пишутся массовой записью (COPY) с одним слиянием на файл
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class StockImportService {
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final CsvParserService csvParserService;
+    private final StockService stockService;
+    private final ImportProperties importProperties;
+    private final PlatformTransactionManager transactionManager;
+    @Qualifier("csvParserExecutor")
+    private final TaskExecutor csvParserExecutor;
+    private final ParallelCsvParserService parallelCsvParserService;
+    private final MeterRegistry meterRegistry;
+
+    // Возвращает количество примененных строк
+    public long importCsv(MultipartFile file) throws Exception {
+        if (isParallel(file.getOriginalFilename())) {
+            csvParserService.checkCsvFile(file);
+            // Сегменты разбираются из файла на диске, поэтому загрузку сначала сохраняю
+            Path spool = Files.createTempFile("socks-import-", ".csv");
+            try {
+                file.transferTo(spool);
+                return importParallel(spool, file.getOriginalFilename(), ImportProgress.NONE);
+            } finally {
+                Files.deleteIfExists(spool);
+            }
+        }
+        return importCsv(file.getOriginalFilename(),
+                consumer -> csvParserService.parseCsvFile(file, importProperties.getChunkSize(), consumer),
+                ImportProgress.NONE);
+    }
+
+    // Импорт из файла на диске, например загрузки, сохраненной для фоновой задачи
+    public long importCsv(Path file, String fileName, ImportProgress progress) throws Exception {
+        if (isParallel(fileName)) {
+            return importParallel(file, fileName, progress);
+        }
+        return importCsv(fileName, fileSource(file, fileName, null), progress);
+    }
+
+    // Проверка файла или применение только корректных строк за один проход: ошибочные строки не прерывают
+    // разбор, первые max-reported-errors из них попадают в отчет. Всегда потоковый разбор, parse-mode не влияет
+    public ImportReportDto importCsv(MultipartFile file, ImportMode mode) throws Exception {
+        if (mode == ImportMode.APPLY) {
+            long rows = importCsv(file);
+            return report(mode, rows, rows, null);
+        }
+        ImportErrors errors = new ImportErrors(importProperties.getMaxReportedErrors());
+        return importCollectingErrors(file.getOriginalFilename(), mode, errors,
+                consumer -> csvParserService.parseCsvFile(file, importProperties.getChunkSize(), consumer, errors),
+                ImportProgress.NONE);
+    }
+
+    public ImportReportDto importCsv(Path file, String fileName, ImportMode mode, ImportProgress progress) throws Exception {
+        if (mode == ImportMode.APPLY) {
+            long rows = importCsv(file, fileName, progress);
+            return report(mode, rows, rows, null);
+        }
+        ImportErrors errors = new ImportErrors(importProperties.getMaxReportedErrors());
+        return importCollectingErrors(fileName, mode, errors, fileSource(file, fileName, errors), progress);
+    }
+
+    private ImportReportDto importCollectingErrors(String fileName, ImportMode mode, ImportErrors errors,
+                                                   CsvSource source, ImportProgress progress) throws Exception {
+        long valid;
+        long applied = 0;
+        if (mode == ImportMode.VALIDATE) {
+            long[] rows = {0};
+            source.parse(chunk -> {
+                rows[0] += chunk.size();
+                progress.parsed(chunk.size());
+            });
+            valid = rows[0];
+        } else {
+            applied = importCsv(fileName, source, progress);
+            valid = applied;
+        }
+        log.info("Файл {} обработан в режиме {}, корректных строк: {}, ошибочных: {}",
+                fileName, mode.getValue(), valid, errors.getCount());
+        return report(mode, valid, applied, errors);
+    }
+
+    private CsvSource fileSource(Path file, String fileName, ImportErrors errors) {
+        return consumer -> csvParserService.parseCsv(file, fileName, importProperties.getChunkSize(), consumer, errors);
+    }
+
+    // Сжатый файл не делится на сегменты без распаковки, поэтому он всегда разбирается потоком
+    private boolean isParallel(String fileName) {
+        return importProperties.getParseMode() == ImportProperties.ParseMode.PARALLEL && !CsvCompression.isCompressed(fileName);
+    }
+
+    private static ImportReportDto report(ImportMode mode, long valid, long applied, ImportErrors errors) {
+        ImportReportDto report = new ImportReportDto();
+        report.setMode(mode.getValue());
+        report.setRowsValid(valid);
+        report.setRowsApplied(applied);
+        if (errors == null) {
+            report.setErrors(List.of());
+        } else {
+            report.setRowsInvalid(errors.getCount());
+            report.setErrors(errors.getErrors());
+            report.setErrorsTruncated(errors.getCount() > report.getErrors().size());
+        }
+        report.setRowsTotal(valid + report.getRowsInvalid());
+        return report;
+    }
+
+    private long importCsv(String fileName, CsvSource source, ImportProgress progress) throws Exception {
+
+        BlockingQueue<StockChunk> queue = new ArrayBlockingQueue<>(importProperties.getQueueCapacity());
+        FutureTask<Void> parsing = new FutureTask<>(() -> {
+            source.parse(chunk -> {
+                progress.parsed(chunk.size());
+                putChunk(queue, chunk);
+            });
+            return null;
+        });
+        csvParserExecutor.execute(parsing);
+
+        try {
+            long rows;
+            if (importProperties.getCommitMode() == ImportProperties.CommitMode.FILE) {
+                // Одна транзакция на весь файл, addedStock каждой порции к ней присоединяется.
+                // Примененными строки становятся только при фиксации
+                Long applied = new TransactionTemplate(transactionManager).execute(status -> drain(queue, parsing, ImportProgress.NONE));
+                rows = applied == null ? 0 : applied;
+                progress.applied(rows);
+            } else {
+                // Каждая порция фиксируется транзакцией addedStock
+                rows = drain(queue, parsing, progress);
+            }
+            log.info("Импорт файла {} завершен, применено строк: {}", fileName, rows);
+            recordRows("stream", rows);
+            return rows;
+        } catch (ParseFailure e) {
+            throw e.getCause();
+        } finally {
+            // Если запись упала - останавливаю разбор, поток разбора висит на заполненной очереди
+            parsing.cancel(true);
+        }
+    }
+
+    // Ошибка в любой строке обнаруживается до записи, поэтому файл с ошибкой не применяется ни в каком commit-mode
+    private long importParallel(Path file, String fileName, ImportProgress progress) throws IOException {
+        ParallelCsvParserService.Result parsed = parallelCsvParserService.parse(file);
+        progress.parsed(parsed.rows());
+
+        List<StockChunk> chunks = new ArrayList<>();
+        StockChunk chunk = new StockChunk(importProperties.getChunkSize());
+        for (Map.Entry<SockKey, Integer> entry : parsed.quantities().entrySet()) {
+            if (chunk.isFull()) {
+                chunks.add(chunk);
+                chunk = new StockChunk(importProperties.getChunkSize());
+            }
+            chunk.add(entry.getKey().color(), entry.getKey().cottonPercentage(), entry.getValue());
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+
+        if (importProperties.getCommitMode() == ImportProperties.CommitMode.FILE) {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> chunks.forEach(stockService::addedStock));
+        } else {
+            chunks.forEach(stockService::addedStock);
+        }
+        progress.applied(parsed.rows());
+        log.info("Импорт файла {} завершен, применено строк: {}, товаров: {}", fileName, parsed.rows(), parsed.quantities().size());
+        recordRows("parallel", parsed.rows());
+        return parsed.rows();
+    }
+
+    // Число импортов и строк в них, parse - потоковый или параллельный разбор
+    private void recordRows(String parse, long rows) {
+        meterRegistry.summary("socks.import.rows", "parse", parse).record(rows);
+    }
+
+    // Порции пишутся по мере разбора. В commit-mode file, когда записано bulk-threshold-rows строк, остальные идут
+    // одной массовой записью в транзакции файла. В chunk каждая порция фиксируется своим addedStock: COPY со слиянием
+    // на порцию - больше запросов, чем один upsert порции
+    private long drain(BlockingQueue<StockChunk> queue, Future<Void> parsing, ImportProgress progress) {
+        int threshold = importProperties.getCommitMode() == ImportProperties.CommitMode.FILE
+                ? importProperties.getBulkThresholdRows() : 0;
+        long rows = 0;
+        while (true) {
+            StockChunk chunk = pollChunk(queue);
+            if (chunk == null) {
+                if (parsing.isDone() && queue.isEmpty()) {
+                    break;
+                }
+                continue;
+            }
+            if (threshold > 0 && rows >= threshold) {
+                return rows + drainBulk(chunk, queue, parsing, progress);
+            }
+            rows += addChunk(chunk, rows, progress);
+        }
+        awaitParsing(parsing);
+        return rows;
+    }
+
+    private long addChunk(StockChunk chunk, long rows, ImportProgress progress) {
+        stockService.addedStock(chunk);
+        progress.applied(chunk.size());
+        log.debug("Порция из {} строк записана, всего строк: {}", chunk.size(), rows + chunk.size());
+        return chunk.size();
+    }
+
+    // Одна сессия COPY на остаток файла, присоединяется к транзакции файла, слияние одно
+    private long drainBulk(StockChunk first, BlockingQueue<StockChunk> queue, Future<Void> parsing,
+                           ImportProgress progress) {
+        log.debug("Записано {} строк, импорт переключен на массовую запись", importProperties.getBulkThresholdRows());
+        Iterator<StockChunk> buffered = List.of(first).iterator();
+        long rows = stockService.addedStockBulk(() -> buffered.hasNext() ? buffered.next() : nextChunk(queue, parsing));
+        progress.applied(rows);
+        return rows;
+    }
+
+    // Следующая порция или null, когда разбор завершен. Ошибка разбора откатывает массовую запись
+    private static StockChunk nextChunk(BlockingQueue<StockChunk> queue, Future<Void> parsing) {
+        while (true) {
+            StockChunk chunk = pollChunk(queue);
+            if (chunk != null) {
+                return chunk;
+            }
+            if (parsing.isDone() && queue.isEmpty()) {
+                awaitParsing(parsing);
+                return null;
+            }
+        }
+    }
+
+    private static StockChunk pollChunk(BlockingQueue<StockChunk> queue) {
+        try {
+            return queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Импорт прерван");
+        }
+    }
+
+    private static void putChunk(BlockingQueue<StockChunk> queue, StockChunk chunk) {
+        try {
+            queue.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Разбор файла прерван");
+        }
+    }
+
+    // Пробрасываю ошибку разбора файла наружу как есть, что бы ее обработал GlobalExceptionHandler
+    private static void awaitParsing(Future<Void> parsing) {
+        try {
+            parsing.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new ParseFailure((Exception) cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Импорт прерван");
+        }
+    }
+
+    // Ход импорта для тех, кто за ним следит. Вызывается из потоков разбора и записи
+    public interface ImportProgress {
+
+        ImportProgress NONE = new ImportProgress() {
+        };
+
+        default void parsed(long rows) {
+        }
+
+        default void applied(long rows) {
+        }
+    }
+
+    private interface CsvSource {
+        void parse(Consumer<StockChunk> consumer) throws Exception;
+    }
+
+    // Проверяемое исключение разбора, которое нужно провести через TransactionTemplate
+    private static class ParseFailure extends RuntimeException {
+
+        ParseFailure(Exception cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Exception getCause() {
+            return (Exception) super.getCause();
+        }
+    }
+}
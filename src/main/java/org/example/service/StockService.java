@@ -2,19 +2,38 @@ package org.example.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.dto.CottonRange;
+import org.example.dto.QuantityFilterDto;
+import org.example.dto.SockCursor;
+import org.example.dto.SockDto;
+import org.example.dto.SockKey;
+import org.example.dto.SockPageDto;
+import org.example.dto.StockChunk;
 import org.example.dto.StockDto;
+import org.example.dto.StockFilter;
+import org.example.dto.StockMovement;
 import org.example.entity.SockEntity;
-import org.example.entity.StockEntity;
+import org.example.event.StockChangedEvent;
 import org.example.exception.BusinessLogicException;
 import org.example.exception.InsufficientStockException;
 import org.example.exception.NotFoundProductException;
+import org.example.repositories.ColorDictionary;
+import org.example.repositories.StockBulkWriter;
 import org.example.repositories.StockRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
@@ -23,59 +42,164 @@ public class StockService {
 
     private final StockRepository stockRepository;
     private final SockService sockService;
+    private final StockAggregateIndex stockAggregateIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StockBulkWriter stockBulkWriter;
+    private final ColorDictionary colorDictionary;
+    private final QuantityCache quantityCache;
 
+    // Строки партии сворачиваются по товару, дальше остатки обновляются парой set-based запросов на всю пачку
     @Transactional
     public void addedStock(List<StockDto> stockDtoList) {
+        Map<SockKey, Integer> quantities = new HashMap<>();
         for (StockDto stockDto : stockDtoList) {
-            SockEntity sockEntity = sockService.getSockEntityAndCreate(stockDto.getSockDto());
-            Optional<StockEntity> optionalStockEntity = stockRepository.findBySock(sockEntity);
-
-            if(optionalStockEntity.isEmpty()) {
-                StockEntity stockEntity = new StockEntity();
-                stockEntity.setSock(sockEntity);
-                stockEntity.setQuantity(stockDto.getQuantity());
-                stockRepository.save(stockEntity);
-                continue;
+            SockKey key = keyOf(stockDto.getSockDto().getColor(), stockDto.getSockDto().getCottonPercentage());
+            quantities.merge(key, stockDto.getQuantity(), Math::addExact);
+        }
+        stockRepository.addQuantities(quantities);
+        eventPublisher.publishEvent(new StockChangedEvent(quantities));
+        log.info("Поступление товара учтено, позиций: {}", quantities.size());
+    }
+
+    @Transactional
+    public void addedStock(StockChunk chunk) {
+        Map<SockKey, Integer> quantities = new HashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            SockKey key = keyOf(chunk.getColor(i), chunk.getCottonPercentage(i));
+            quantities.merge(key, chunk.getQuantity(i), Math::addExact);
+        }
+        stockRepository.addQuantities(quantities);
+        eventPublisher.publishEvent(new StockChangedEvent(quantities));
+    }
+
+    // Крупная партия одной транзакцией: порции идут в сессию массовой записи, пока chunks не вернет null,
+    // остатки меняются одним применением в конце. Возвращает количество записанных строк
+    @Transactional
+    public long addedStockBulk(Supplier<StockChunk> chunks) {
+        StockBulkWriter.Session session = stockBulkWriter.begin();
+        long rows = 0;
+        Map<SockKey, Integer> deltas;
+        try {
+            StockChunk chunk;
+            while ((chunk = chunks.get()) != null) {
+                session.write(chunk);
+                rows += chunk.size();
             }
-            StockEntity stockEntity = optionalStockEntity.get();
-            int quantity = stockEntity.getQuantity();
-            int updatedQuantity = quantity + stockDto.getQuantity();
-            stockEntity.setQuantity(updatedQuantity);
-            stockRepository.save(stockEntity);
+            deltas = session.finish();
+        } catch (RuntimeException | Error e) {
+            session.abort();
+            throw e;
         }
+        eventPublisher.publishEvent(new StockChangedEvent(deltas));
+        log.info("Массовая запись завершена, строк: {}, товаров: {}", rows, deltas.size());
+        return rows;
     }
 
+    // Списание без чтения остатка в Java: условие "хватает ли товара" проверяет сам UPDATE,
+    // поэтому параллельные списания не теряют обновления и не уводят остаток в минус.
+    // Несколько позиций списываются одним запросом по принципу все или ничего
     @Transactional
     public void removeStock(List<StockDto> stockDtoList) {
-        log.info("START SERVICE");
-        List<StockEntity> updatedStockEntityList = new ArrayList<>();
+        Map<SockKey, Integer> quantities = new LinkedHashMap<>();
+        Map<SockKey, SockDto> sockDtos = new HashMap<>();
         for (StockDto stockDto : stockDtoList) {
+            SockKey key = keyOf(stockDto.getSockDto().getColor(), stockDto.getSockDto().getCottonPercentage());
+            quantities.merge(key, stockDto.getQuantity(), Math::addExact);
+            sockDtos.putIfAbsent(key, stockDto.getSockDto());
+        }
 
-            SockEntity sockEntity = sockService.getSockEntity(stockDto.getSockDto());
+        if (quantities.size() == 1) {
+            Map.Entry<SockKey, Integer> entry = quantities.entrySet().iterator().next();
+            SockKey key = entry.getKey();
+            if (stockRepository.decrementQuantity(key.color(), key.cottonPercentage(), entry.getValue()) == 0) {
+                throw rejectionOf(sockDtos.get(key));
+            }
+        } else {
+            Set<SockKey> updated = stockRepository.subtractQuantities(quantities);
+            for (SockKey key : quantities.keySet()) {
+                if (!updated.contains(key)) {
+                    // Исключение откатывает уже списанные позиции
+                    throw rejectionOf(sockDtos.get(key));
+                }
+            }
+        }
+        Map<SockKey, Integer> deltas = new HashMap<>();
+        quantities.forEach((key, quantity) -> deltas.put(key, -quantity));
+        eventPublisher.publishEvent(new StockChangedEvent(deltas));
+        log.info("Количество товара успешно обновлено, позиций: {}", quantities.size());
+    }
 
-            log.info("GET SOCK ENTITY " + sockEntity);
+    // Пачка одиночных движений одной транзакцией. Остатки затронутых товаров блокируются заранее,
+    // дальше движения проигрываются в памяти в порядке поступления - каждое получает тот же результат,
+    // что и при последовательном выполнении, а в БД уходит только итоговое изменение по товару.
+    // Возвращает отказ для каждого движения, null - движение применено
+    @Transactional
+    public List<RuntimeException> applyMovements(List<StockMovement> movements) {
+        List<SockKey> movementKeys = new ArrayList<>(movements.size());
+        movements.forEach(movement -> movementKeys.add(keyOf(movement.key().color(), movement.key().cottonPercentage())));
+        Set<SockKey> keys = new HashSet<>(movementKeys);
+        Map<SockKey, Integer> balances = stockRepository.lockQuantities(keys);
+        Set<SockKey> existing = new HashSet<>(balances.keySet());
 
-            Optional<StockEntity> optionalStockEntity = stockRepository.findBySock(sockEntity);
-            if(optionalStockEntity.isEmpty()) {
-                throw new NotFoundProductException(" с полями " + stockDto.getSockDto().getColor() + "/"
-                            + stockDto.getSockDto().getCottonPercentage());
+        Map<SockKey, Integer> deltas = new HashMap<>();
+        List<RuntimeException> rejections = new ArrayList<>(movements.size());
+        for (int i = 0; i < movements.size(); i++) {
+            StockMovement movement = movements.get(i);
+            SockKey key = movementKeys.get(i);
+            Integer balance = balances.get(key);
+            RuntimeException rejection = null;
+            if (movement.isOutcome() && balance == null) {
+                // Остатка нет ни в БД, ни от поступлений этой пачки - состояние в БД совпадает с пачкой
+                rejection = notFoundRejectionOf(key);
+            } else if (movement.isOutcome() && balance < -movement.quantity()) {
+                rejection = new InsufficientStockException("товара носки: " + key.color() + "/" +
+                        key.cottonPercentage() + " недостаточно на складе");
+            } else {
+                try {
+                    balances.put(key, Math.addExact(balance == null ? 0 : balance, movement.quantity()));
+                    deltas.merge(key, movement.quantity(), Integer::sum);
+                } catch (ArithmeticException e) {
+                    rejection = e;
+                }
             }
-            StockEntity stockEntity = optionalStockEntity.get();
-            log.info("Текущее количество товара {} на складе: {}", stockEntity.getSock(), stockEntity.getQuantity() );
+            rejections.add(rejection);
+        }
 
-            if(stockEntity.getQuantity() < stockDto.getQuantity() ) {
-                log.info("stockEntity.getQuantity(): {}, stockDto.getQuantity(): {}", stockEntity.getQuantity(), stockDto.getQuantity());
-                throw new InsufficientStockException("товара носки: " + sockEntity.getColor() + "/" +
-                        sockEntity.getCottonPercentage() + " недостаточно на складе");
-            }
+        // Нулевое изменение пропускается только у товара с остатком: новый товар последовательные
+        // движения создали бы с остатком 0, поэтому его строка записывается
+        deltas.entrySet().removeIf(delta -> delta.getValue() == 0 && existing.contains(delta.getKey()));
+        stockRepository.addQuantities(deltas);
+        eventPublisher.publishEvent(new StockChangedEvent(deltas));
+        return rejections;
+    }
+
+    // Ключ товара с цветом по политике нормализации: "Red " и "red" - один товар
+    private SockKey keyOf(String color, int cottonPercentage) {
+        return new SockKey(colorDictionary.normalize(color), cottonPercentage);
+    }
+
+    private RuntimeException notFoundRejectionOf(SockKey key) {
+        SockDto sockDto = new SockDto();
+        sockDto.setColor(key.color());
+        sockDto.setCottonPercentage(key.cottonPercentage());
+        try {
+            return rejectionOf(sockDto);
+        } catch (NotFoundProductException e) {
+            return e;
+        }
+    }
 
-            int updatedQuantity = stockEntity.getQuantity() - stockDto.getQuantity();
-            stockEntity.setQuantity(updatedQuantity);
-            updatedStockEntityList.add(stockEntity);
-            log.info("Новое количество товара {} на складе: {}",stockEntity.getSock(), stockEntity.getQuantity());
+    // Причина отказа выясняется только когда списание не прошло
+    private RuntimeException rejectionOf(SockDto sockDto) {
+        SockEntity sockEntity = sockService.getSockEntity(sockDto);
+        // Остаток читается из БД, а не из сущности: в этой транзакции его могли изменить запросом
+        Integer quantity = stockRepository.findQuantity(sockEntity.getColor(), sockEntity.getCottonPercentage());
+        if (quantity == null) {
+            return new NotFoundProductException(" с полями " + sockDto.getColor() + "/" + sockDto.getCottonPercentage());
         }
-        stockRepository.saveAll(updatedStockEntityList);
-        log.info("Количество товара успешно обновлено");
+        log.debug("Текущее количество товара {} на складе: {}", sockEntity, quantity);
+        return new InsufficientStockException("товара носки: " + sockEntity.getColor() + "/" +
+                sockEntity.getCottonPercentage() + " недостаточно на складе");
     }
 
     // Фильтрация по цвету и проценту хлопка с диапазоном (больше чем - меньше чем ну и равно)
@@ -90,20 +214,107 @@ public class StockService {
             throw new IllegalArgumentException("Поле 'color' не должно быть пустым.");
         }
 
-        if (moreThan != null && lessThan != null) {
-            // Диапазон: больше чем moreThan и меньше чем lessThan
-            return stockRepository.sumQuantityByColorAndCottonPercentageInRange(color, moreThan, lessThan);
-        } else if (moreThan != null) {
-            // Только больше чем
-            return stockRepository.sumQuantityByColorAndCottonPercentageGreaterThan(color, moreThan);
-        } else if (lessThan != null) {
-            // Только меньше чем
-            return stockRepository.sumQuantityByColorAndCottonPercentageLessThan(color, lessThan);
-        } else if ( equal != null) {
-            // Только равно
-            return stockRepository.sumQuantityByColorAndCottonPercentageEqual(color,equal);
-        }
-        return 0; // Если нет фильтра, возвращаем 0 (Такого быть не должно)
+        CottonRange range = CottonRange.of(moreThan, lessThan, equal);
+        if (range == null) {
+            return 0; // Если нет фильтра, возвращаем 0 (Такого быть не должно)
+        }
+
+        // Индекс в памяти отвечает без запроса в БД, если включен
+        if (stockAggregateIndex.isReady()) {
+            return stockAggregateIndex.sumQuantity(colorDictionary.normalize(color), range);
+        }
+
+        // Повторные запросы отвечаются из кеша, пока по цвету не было записей, одновременные - одним запросом в БД
+        return quantityCache.get(colorDictionary.normalize(color), range, () -> {
+            if (moreThan != null && lessThan != null) {
+                // Диапазон: больше чем moreThan и меньше чем lessThan
+                return stockRepository.sumQuantityByColorAndCottonPercentageInRange(color, moreThan, lessThan);
+            } else if (moreThan != null) {
+                // Только больше чем
+                return stockRepository.sumQuantityByColorAndCottonPercentageGreaterThan(color, moreThan);
+            } else if (lessThan != null) {
+                // Только меньше чем
+                return stockRepository.sumQuantityByColorAndCottonPercentageLessThan(color, lessThan);
+            } else if ( equal != null) {
+                // Только равно
+                return stockRepository.sumQuantityByColorAndCottonPercentageEqual(color,equal);
+            }
+            return 0;
+        });
+    }
+
+    // Список товаров постранично: фильтры как у getSocksQuantity, но цвет необязателен и без фильтра
+    // по хлопку выдаются все товары. Следующая страница запрашивается курсором из ответа, а не номером
+    public SockPageDto getSocks(String color, Integer moreThan, Integer lessThan, Integer equal, String after, int limit) {
+        if (lessThan != null && moreThan != null && lessThan <= moreThan) {
+            throw new BusinessLogicException("'lessThan' должно быть больше 'moreThan'.");
+        }
+        CottonRange range = CottonRange.of(moreThan, lessThan, equal);
+        if (range == null) {
+            range = new CottonRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+        String name = color == null || color.trim().isEmpty() ? null : colorDictionary.normalize(color);
+        return stockRepository.findSockPage(name, range, SockCursor.parse(after), limit);
+    }
+
+    // Те же фильтры, что у getSocksQuantity, но сразу несколько: из индекса в памяти, если он включен,
+    // иначе одним запросом на все фильтры. Ответ в порядке фильтров, null - под фильтр не попал ни один товар
+    public List<Integer> getSocksQuantities(List<QuantityFilterDto> filters) {
+        List<Integer> quantities = new ArrayList<>(filters.size());
+        List<StockFilter> stockFilters = new ArrayList<>(filters.size());
+        List<Integer> positions = new ArrayList<>(filters.size());
+        for (int i = 0; i < filters.size(); i++) {
+            QuantityFilterDto filter = filters.get(i);
+            if (filter.getLessThan() != null && filter.getMoreThan() != null && filter.getLessThan() <= filter.getMoreThan()) {
+                throw new BusinessLogicException("фильтр " + (i + 1) + ": 'lessThan' должно быть больше 'moreThan'.");
+            }
+            CottonRange range = CottonRange.of(filter.getMoreThan(), filter.getLessThan(), filter.getEqual());
+            // Без фильтра по хлопку 0, как у getSocksQuantity
+            quantities.add(range == null ? Integer.valueOf(0) : null);
+            if (range != null) {
+                stockFilters.add(new StockFilter(colorDictionary.normalize(filter.getColor()), range));
+                positions.add(i);
+            }
+        }
+        if (stockFilters.isEmpty()) {
+            return quantities;
+        }
+        List<Integer> sums;
+        if (stockAggregateIndex.isReady()) {
+            sums = new ArrayList<>(stockFilters.size());
+            for (StockFilter filter : stockFilters) {
+                sums.add(stockAggregateIndex.sumQuantity(filter.color(), filter.range()));
+            }
+        } else {
+            sums = stockRepository.sumQuantities(stockFilters);
+        }
+        for (int i = 0; i < sums.size(); i++) {
+            quantities.set(positions.get(i), sums.get(i));
+        }
+        return quantities;
+    }
+
+    // Остатки по проценту хлопка для нескольких цветов: из индекса в памяти, если он включен, иначе одним запросом.
+    // Ключи ответа - цвета как в запросе, в гистограммах только ненулевые остатки
+    public Map<String, SortedMap<Integer, Integer>> getCottonHistogram(List<String> colors) {
+        if (colors == null || colors.isEmpty() || colors.stream().anyMatch(c -> c == null || c.trim().isEmpty())) {
+            throw new IllegalArgumentException("Поле 'colors' не должно быть пустым.");
+        }
+        Map<String, SortedMap<Integer, Integer>> histograms;
+        if (stockAggregateIndex.isReady()) {
+            histograms = new HashMap<>();
+            for (String color : colors) {
+                String name = colorDictionary.normalize(color);
+                histograms.computeIfAbsent(name, stockAggregateIndex::histogram);
+            }
+        } else {
+            histograms = stockRepository.cottonHistogram(colors);
+        }
+        Map<String, SortedMap<Integer, Integer>> response = new LinkedHashMap<>();
+        for (String color : colors) {
+            response.put(color, histograms.getOrDefault(colorDictionary.normalize(color), new TreeMap<>()));
+        }
+        return response;
     }
 
 
@@ -0,0 +1,249 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.GroupCommitProperties;
+import org.example.dto.SearchStockDto;
+import org.example.dto.SockKey;
+import org.example.dto.StockMovement;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Групповая фиксация одиночных поступлений и отгрузок: запросы, пришедшие в коротком окне,
+// применяются одной транзакцией в отдельном потоке. Вызывающий поток ждет результат своего движения
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StockWriteBatcher {
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final StockService stockService;
+    private final GroupCommitProperties groupCommitProperties;
+    private final PlatformTransactionManager transactionManager;
+
+    private BlockingQueue<PendingMovement> queue;
+    private TransactionTemplate transactionTemplate;
+    private Thread writer;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!groupCommitProperties.isEnabled()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(groupCommitProperties.getQueueCapacity());
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setTimeout(statementTimeoutSeconds());
+        running = true;
+        writer = new Thread(this::writeLoop, "stock-group-commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Веб-сервер к этому моменту уже остановлен, поток дописывает то, что осталось в очереди
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join();
+        // Движения, поставленные в очередь после выхода потока
+        failQueued(new ArrayList<>(), "Групповая фиксация остатков остановлена, движение не применено");
+    }
+
+    public boolean isEnabled() {
+        return groupCommitProperties.isEnabled();
+    }
+
+    public void income(SearchStockDto searchStockDto) {
+        submit(searchStockDto, searchStockDto.getQuantity());
+    }
+
+    public void outcome(SearchStockDto searchStockDto) {
+        submit(searchStockDto, -searchStockDto.getQuantity());
+    }
+
+    // Отказ именно этого движения пробрасывается как есть, что бы его обработал GlobalExceptionHandler.
+    // Прерванный вызов не отменяет движение, которое уже попало в очередь
+    private void submit(SearchStockDto searchStockDto, int quantity) {
+        if (!running) {
+            throw new IllegalStateException("Групповая фиксация остатков не запущена");
+        }
+        SockKey key = new SockKey(searchStockDto.getColor(), searchStockDto.getCottonPercentage());
+        PendingMovement pending = new PendingMovement(new StockMovement(key, quantity));
+        try {
+            queue.put(pending);
+            // stop() мог завершить поток записи между проверкой выше и put, тогда движение никто не заберет
+            if (!running && pending.withdraw()) {
+                throw new IllegalStateException("Групповая фиксация остатков не запущена");
+            }
+            await(pending);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Запрос прерван");
+        }
+    }
+
+    // Движение из пустой очереди фиксируется не дольше max-delay + statement-timeout. Не дождавшись, вызов забирает
+    // движение из очереди. Если оно уже в транзакции, ждет ее конца: транзакцию ограничивает statement-timeout
+    private void await(PendingMovement pending) throws ExecutionException, InterruptedException {
+        long wait = groupCommitProperties.getMaxDelay().toNanos() + TimeUnit.SECONDS.toNanos(statementTimeoutSeconds());
+        while (true) {
+            try {
+                pending.result().get(wait, TimeUnit.NANOSECONDS);
+                return;
+            } catch (TimeoutException e) {
+                if (pending.withdraw()) {
+                    throw new IllegalStateException("Групповая фиксация не успела записать движение, оно не применено");
+                }
+            }
+        }
+    }
+
+    private void writeLoop() {
+        int maxBatchSize = groupCommitProperties.getMaxBatchSize();
+        List<PendingMovement> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch, maxBatchSize);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                log.warn("Поток групповой фиксации прерван, в очереди запросов: {}", queue.size());
+                failQueued(batch, "Поток групповой фиксации прерван, движение не применено");
+                return;
+            }
+            if (!batch.isEmpty()) {
+                apply(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // Отказывает движениям, которые уже не будут записаны, что бы их вызовы не ждали зря
+    private void failQueued(List<PendingMovement> pending, String message) {
+        queue.drainTo(pending);
+        for (PendingMovement movement : pending) {
+            movement.result().completeExceptionally(new IllegalStateException(message));
+        }
+    }
+
+    private int statementTimeoutSeconds() {
+        return (int) Math.max(1, groupCommitProperties.getStatementTimeout().toSeconds());
+    }
+
+    // Ждет первое движение, дальше добирает пачку до max-batch-size, но не дольше max-delay
+    private void collect(List<PendingMovement> batch, int maxBatchSize) throws InterruptedException {
+        PendingMovement first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + groupCommitProperties.getMaxDelay().toNanos();
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                return;
+            }
+            PendingMovement next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void apply(List<PendingMovement> batch) {
+        // Движения, которые вызовы уже забрали по таймауту, не применяются
+        List<PendingMovement> claimed = batch.stream().filter(PendingMovement::claim).toList();
+        if (claimed.isEmpty()) {
+            return;
+        }
+        List<StockMovement> movements = claimed.stream().map(PendingMovement::movement).toList();
+        try {
+            List<RuntimeException> rejections = transactionTemplate.execute(status -> stockService.applyMovements(movements));
+            for (int i = 0; i < claimed.size(); i++) {
+                if (rejections.get(i) == null) {
+                    claimed.get(i).result().complete(null);
+                } else {
+                    claimed.get(i).result().completeExceptionally(rejections.get(i));
+                }
+            }
+            log.debug("Пачка из {} движений остатков зафиксирована", claimed.size());
+        } catch (RuntimeException | Error e) {
+            if (claimed.size() == 1) {
+                claimed.get(0).result().completeExceptionally(e);
+                return;
+            }
+            // Транзакция пачки не прошла - повторяю движения по одному, что бы ошибку получил только ее виновник.
+            // Транзакция откатилась, до повтора движение снова можно забрать
+            log.warn("Пачка из {} движений остатков не зафиксирована, применяю по одному: {}", claimed.size(), e.getMessage());
+            claimed.forEach(PendingMovement::release);
+            for (PendingMovement pending : claimed) {
+                apply(List.of(pending));
+            }
+        }
+    }
+
+    // Движение в очереди забирает либо поток записи (claim), либо вызов по таймауту (withdraw), но не оба
+    private static final class PendingMovement {
+
+        private static final int QUEUED = 0;
+        private static final int APPLYING = 1;
+        private static final int WITHDRAWN = 2;
+
+        private final StockMovement movement;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        PendingMovement(StockMovement movement) {
+            this.movement = movement;
+        }
+
+        StockMovement movement() {
+            return movement;
+        }
+
+        CompletableFuture<Void> result() {
+            return result;
+        }
+
+        boolean claim() {
+            return state.compareAndSet(QUEUED, APPLYING);
+        }
+
+        void release() {
+            state.compareAndSet(APPLYING, QUEUED);
+        }
+
+        boolean withdraw() {
+            return state.compareAndSet(QUEUED, WITHDRAWN);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+-- Схема в том виде, в котором ее создавал hibernate (ddl-auto: update).
+-- На уже существующей БД ничего не меняет
+CREATE TABLE IF NOT EXISTS sock_entity (
+    id                BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    color             VARCHAR(255),
+    cotton_percentage INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS stock_entity (
+    id       BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    quantity INTEGER NOT NULL,
+    sock_id  BIGINT REFERENCES sock_entity (id)
+);
@@ -0,0 +1,30 @@
+-- Уникальность товара (цвет, процент хлопка) и одного остатка на товар.
+-- Нужна для INSERT ... ON CONFLICT при пакетном оприходовании.
+-- Перед добавлением ограничений схлопываю дубли, которые могли накопиться без них
+
+-- Остатки дублей товара переношу на товар с минимальным id
+UPDATE stock_entity st
+SET sock_id = d.keep_id
+FROM (SELECT id, MIN(id) OVER (PARTITION BY color, cotton_percentage) AS keep_id FROM sock_entity) d
+WHERE st.sock_id = d.id
+  AND d.id <> d.keep_id;
+
+DELETE FROM sock_entity s
+USING sock_entity k
+WHERE s.color = k.color
+  AND s.cotton_percentage = k.cotton_percentage
+  AND s.id > k.id;
+
+-- Несколько остатков одного товара складываю в один
+UPDATE stock_entity st
+SET quantity = t.total
+FROM (SELECT MIN(id) AS keep_id, SUM(quantity) AS total FROM stock_entity GROUP BY sock_id HAVING COUNT(*) > 1) t
+WHERE st.id = t.keep_id;
+
+DELETE FROM stock_entity st
+USING stock_entity k
+WHERE st.sock_id = k.sock_id
+  AND st.id > k.id;
+
+ALTER TABLE sock_entity ADD CONSTRAINT uk_sock_color_cotton UNIQUE (color, cotton_percentage);
+ALTER TABLE stock_entity ADD CONSTRAINT uk_stock_sock UNIQUE (sock_id);
@@ -0,0 +1,17 @@
+-- Идентификаторы из последовательностей с шагом 50 вместо IDENTITY/serial:
+-- hibernate резервирует блок ключей одним nextval и может вставлять сущности пакетами.
+-- DEFAULT на столбце оставлен, что бы вставки из SQL без id продолжали работать
+
+ALTER TABLE sock_entity ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE sock_entity ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS sock_entity_id_seq;
+CREATE SEQUENCE sock_entity_seq INCREMENT BY 50 OWNED BY sock_entity.id;
+SELECT setval('sock_entity_seq', COALESCE((SELECT MAX(id) FROM sock_entity), 0) + 1, false);
+ALTER TABLE sock_entity ALTER COLUMN id SET DEFAULT nextval('sock_entity_seq');
+
+ALTER TABLE stock_entity ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE stock_entity ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS stock_entity_id_seq;
+CREATE SEQUENCE stock_entity_seq INCREMENT BY 50 OWNED BY stock_entity.id;
+SELECT setval('stock_entity_seq', COALESCE((SELECT MAX(id) FROM stock_entity), 0) + 1, false);
+ALTER TABLE stock_entity ALTER COLUMN id SET DEFAULT nextval('stock_entity_seq');
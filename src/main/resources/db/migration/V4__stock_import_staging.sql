@@ -0,0 +1,12 @@
+-- Промежуточная таблица для COPY при импорте крупных партий. UNLOGGED - без записи в WAL,
+-- после сбоя БД таблица очищается, для промежуточных строк это не важно.
+-- Строки разных импортов различаются import_id и удаляются после слияния
+
+CREATE UNLOGGED TABLE IF NOT EXISTS stock_import_staging (
+    import_id         UUID         NOT NULL,
+    color             VARCHAR(255) NOT NULL,
+    cotton_percentage INTEGER      NOT NULL,
+    quantity          INTEGER      NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS ix_stock_import_staging_import ON stock_import_staging (import_id);
@@ -0,0 +1,7 @@
+-- Уникальный индекс товара покрывающий: поиск товара по цвету и проценту хлопка и фильтр запросов SUM/COUNT
+-- получают id прямо из индекса (Index Only Scan), не читая строки таблицы.
+-- У stock_entity(sock_id) quantity в индекс не включаю: каждое изменение остатка стало бы не-HOT обновлением
+-- с записью в индекс, а остатки меняются намного чаще, чем читаются суммы
+ALTER TABLE sock_entity
+    DROP CONSTRAINT uk_sock_color_cotton,
+    ADD CONSTRAINT uk_sock_color_cotton UNIQUE (color, cotton_percentage) INCLUDE (id);
@@ -0,0 +1,16 @@
+-- Остаток переезжает в строку товара: stock_entity была 1:1 с sock_entity, и каждый запрос остатков
+-- соединял две таблицы. Теперь сумма - диапазон по уникальному индексу товара, изменение - UPDATE одной строки.
+-- quantity IS NULL - товар есть, а остатка по нему не было, как раньше товар без строки в stock_entity
+
+ALTER TABLE sock_entity ADD COLUMN quantity INTEGER;
+
+UPDATE sock_entity s
+SET quantity = st.quantity
+FROM stock_entity st
+WHERE st.sock_id = s.id;
+
+-- Последовательность stock_entity_seq принадлежит таблице и удаляется вместе с ней
+DROP TABLE stock_entity;
+
+-- Запас места на странице, что бы изменение остатка оставалось HOT обновлением без записи в индекс
+ALTER TABLE sock_entity SET (fillfactor = 90);
@@ -0,0 +1,42 @@
+package org.example.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Prometheus в тестах не подключен, поэтому реестр для /actuator/prometheus включается явно
+@SpringBootTest(properties = "management.metrics.export.prometheus.enabled=true")
+@AutoConfigureMockMvc
+class MetricsConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void prometheusShouldExposeLatencyPercentilesAndStatementsPerRequest() throws Exception {
+        mockMvc.perform(get("/api/socks/items").param("color", "metrics-missing").param("limit", "1"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/socks").param("color", "metrics-missing").param("equal", "50"));
+
+        String metrics = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(metrics.contains("http_server_requests_seconds{") && metrics.contains("quantile=\"0.999\""), metrics);
+        assertTrue(metrics.contains("spring_data_repository_invocations_seconds_bucket{"), metrics);
+        assertTrue(metrics.contains("method=\"sumQuantityByColorAndCottonPercentageEqual\""), metrics);
+        assertTrue(metrics.contains("hikaricp_connections_acquire_seconds{"), metrics);
+        // По одной записи на HTTP запрос с шаблоном пути в теге
+        assertTrue(metrics.contains("socks_db_statements_count{uri=\"/api/socks/items\",} 1.0"), metrics);
+        assertTrue(metrics.contains("socks_db_statements_count{uri=\"/api/socks\",} 1.0"), metrics);
+        // Попадания и вытеснения кеша GET /api/socks
+        assertTrue(metrics.contains("cache_gets_total{cache=\"socks.quantity\",result=\"miss\","), metrics);
+        assertTrue(metrics.contains("cache_evictions_total{cache=\"socks.quantity\","), metrics);
+    }
+}
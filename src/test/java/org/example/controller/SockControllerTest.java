@@ -1,9 +1,17 @@
 package org.example.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dto.ExportFormat;
 import org.example.dto.SearchStockDto;
+import org.example.dto.SockItemDto;
+import org.example.dto.SockKey;
+import org.example.dto.SockPageDto;
+import org.example.dto.StockChunk;
+import org.example.dto.StockMovement;
 import org.example.dto.UpdateSockDto;
+import org.example.exception.BusinessLogicException;
 import org.example.service.SockService;
+import org.example.service.StockExportService;
 import org.example.service.StockService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,9 +21,24 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
-
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -28,6 +51,8 @@ public class SockControllerTest {
     private SockService sockService;
     @MockBean
     StockService stockService;
+    @MockBean
+    private StockExportService stockExportService;
 
     @Autowired
     private MockMvc mockMvc;
@@ -146,4 +171,144 @@ public class SockControllerTest {
 
         verify(sockService, never()).updateSockEntity(anyLong(), any(UpdateSockDto.class));
     }
-}
\ No newline at end of file
+
+    // Фоновый импорт: сразу 202 с id задачи, состояние задачи доступно по GET
+    @Test
+    void testIncomeSockBatch_Async() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "socks.csv", "text/csv",
+                "Red,50,10\nBlue,30,20".getBytes(StandardCharsets.UTF_8));
+
+        String body = mockMvc.perform(multipart("/api/socks/batch").file(file)
+                        .param("async", "true")
+                        .header("X-Tenant-Id", "warehouse-1"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andReturn().getResponse().getContentAsString();
+        String id = objectMapper.readTree(body).get("id").asText();
+
+        for (int i = 0; i < 100 && !body.contains("COMPLETED"); i++) {
+            Thread.sleep(50);
+            body = mockMvc.perform(get("/api/socks/batch/" + id))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+        }
+        mockMvc.perform(get("/api/socks/batch/" + id))
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.rowsParsed").value(2))
+                .andExpect(jsonPath("$.rowsApplied").value(2));
+        verify(stockService, times(1)).addedStock(any(StockChunk.class));
+
+        mockMvc.perform(get("/api/socks/batch/unknown"))
+                .andExpect(status().isNotFound());
+    }
+
+    // Проверка файла без записи: отчет со всеми ошибочными строками
+    @Test
+    void testIncomeSockBatch_Validate() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "socks.csv", "text/csv",
+                "Red,50,10\nBlue,abc,20\nGreen,40,30".getBytes(StandardCharsets.UTF_8));
+
+        mockMvc.perform(multipart("/api/socks/batch").file(file).param("mode", "validate"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rowsValid").value(2))
+                .andExpect(jsonPath("$.rowsInvalid").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(2))
+                .andExpect(jsonPath("$.errors[0].raw").value("Blue,abc,20"));
+        verify(stockService, never()).addedStock(any(StockChunk.class));
+
+        mockMvc.perform(multipart("/api/socks/batch").file(file).param("mode", "unknown"))
+                .andExpect(status().isBadRequest());
+    }
+
+    // Поток движений: ответ приходит строками NDJSON, по строке на порцию
+    @Test
+    void testStockMovements_StreamsAcknowledgements() throws Exception {
+        when(stockService.applyMovements(anyList())).thenAnswer(invocation -> {
+            List<StockMovement> movements = invocation.getArgument(0);
+            List<RuntimeException> results = new ArrayList<>();
+            movements.forEach(movement -> results.add(null));
+            return results;
+        });
+        String body = "{\"color\":\"Red\",\"cottonPercentage\":50,\"quantity\":10}\n" +
+                "{\"color\":\"Red\",\"cottonPercentage\":50,\"quantity\":-3}\n";
+
+        MvcResult result = mockMvc.perform(post("/api/socks/movements")
+                        .contentType("application/x-ndjson")
+                        .content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String acks = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(1, acks.lines().count());
+        assertEquals(2, objectMapper.readTree(acks).get("applied").asInt());
+        verify(stockService).applyMovements(List.of(
+                new StockMovement(new SockKey("Red", 50), 10),
+                new StockMovement(new SockKey("Red", 50), -3)));
+    }
+
+    @Test
+    void testCottonHistogram_ReturnsSparseMapPerColor() throws Exception {
+        Map<String, SortedMap<Integer, Integer>> histograms = new LinkedHashMap<>();
+        histograms.put("red", new TreeMap<>(Map.of(10, 5, 50, 7)));
+        histograms.put("blue", new TreeMap<>());
+        when(stockService.getCottonHistogram(List.of("red", "blue"))).thenReturn(histograms);
+
+        mockMvc.perform(get("/api/socks/histogram").param("colors", "red,blue"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"red\":{\"10\":5,\"50\":7},\"blue\":{}}", true));
+    }
+
+    @Test
+    void testSocksQuantities_ReturnsZeroForEmptyFilters() throws Exception {
+        when(stockService.getSocksQuantities(anyList())).thenReturn(new ArrayList<>(Arrays.asList(12, null)));
+
+        mockMvc.perform(post("/api/socks/quantities")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"color\":\"red\",\"moreThan\":10},{\"color\":\"blue\",\"equal\":50}]"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[12, 0]", true));
+
+        mockMvc.perform(post("/api/socks/quantities")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"color\":\"\",\"equal\":150}]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testExportStock_StreamsRequestedFormat() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/socks/export").param("format", "ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"socks.ndjson\""));
+
+        mockMvc.perform(get("/api/socks/export").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+
+        doThrow(new BusinessLogicException("format=ndjson")).when(stockExportService).checkExportable(ExportFormat.CSV);
+        mockMvc.perform(get("/api/socks/export").param("format", "csv"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void testGetSocks_PassesCursorAndValidatesLimit() throws Exception {
+        when(stockService.getSocks("red", null, null, 50, "3:50", 20))
+                .thenReturn(new SockPageDto(List.of(new SockItemDto(7L, "red", 50, 4)), "3:51"));
+
+        mockMvc.perform(get("/api/socks/items")
+                        .param("color", "red").param("equal", "50").param("after", "3:50").param("limit", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id").value(7))
+                .andExpect(jsonPath("$.items[0].quantity").value(4))
+                .andExpect(jsonPath("$.next").value("3:51"));
+
+        mockMvc.perform(get("/api/socks/items").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.repositories;
+
+import org.example.config.ColorProperties;
+import org.example.dto.StockChunk;
+import org.example.service.StockService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class ColorDictionaryTest {
+
+    @Autowired
+    private ColorDictionary colorDictionary;
+    @Autowired
+    private StockService stockService;
+    @Autowired
+    private StockRepository stockRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private DataSource dataSource;
+
+    private final String color = "dict-" + UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM sock_entity WHERE color_id IN (SELECT id FROM color WHERE name LIKE ?)", color + "%");
+        jdbcTemplate.update("DELETE FROM color WHERE name LIKE ?", color + "%");
+    }
+
+    @Test
+    void differentSpellingsShouldHitSameSock() {
+        StockChunk income = new StockChunk(1);
+        income.add(" " + color.toUpperCase() + "\t", 10, 5);
+        stockService.addedStock(income);
+        StockChunk more = new StockChunk(1);
+        more.add(color, 10, 2);
+        stockService.addedStock(more);
+
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM color WHERE name LIKE ?", Integer.class, color + "%"));
+        assertEquals(7, stockService.getSocksQuantity(color.toUpperCase(), null, null, 10));
+        assertEquals(7, stockService.getSocksQuantity(color, null, 11, null));
+        assertEquals(Map.of(10, 7), stockRepository.cottonHistogram(List.of(color.toUpperCase())).get(color));
+    }
+
+    @Test
+    void registerAllShouldReturnSameIdForKnownColor() {
+        int id = colorDictionary.register(color);
+
+        assertEquals(id, colorDictionary.registerAll(List.of(color, " " + color + " ")).get(color));
+        assertEquals(id, colorDictionary.findId(color.toUpperCase()));
+        assertEquals(color, colorDictionary.nameOf(id));
+        assertNull(colorDictionary.findId(color + "-missing"));
+    }
+
+    @Test
+    void rolledBackColorShouldNotBePublished() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            colorDictionary.register(color);
+            // Внутри своей транзакции цвет уже виден
+            assertNotNull(colorDictionary.findId(color));
+            status.setRollbackOnly();
+        });
+
+        assertNull(colorDictionary.findId(color));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM color WHERE name = ?", Integer.class, color));
+    }
+
+    // Старые цвета после V7 находятся словарем так же, как новые
+    @Test
+    void migrationShouldNormalizeLegacyColorsLikeDictionary() {
+        String schema = "legacy_" + UUID.randomUUID().toString().replace("-", "");
+        Flyway legacy = Flyway.configure().dataSource(dataSource).schemas(schema).target("6").load();
+        try {
+            legacy.migrate();
+            // Вертикальная табуляция и кириллица: btrim и lower без нужных правил сортировки их не нормализуют
+            jdbcTemplate.update("INSERT INTO " + schema + ".sock_entity (color, cotton_percentage, quantity) VALUES " +
+                    "(?, 10, 5), (?, 10, 2), (?, 20, NULL)", "\u000bКРАСНЫЙ ", "красный", "Blue\u001f");
+
+            Flyway.configure().dataSource(dataSource).schemas(schema).load().migrate();
+
+            ColorProperties policy = new ColorProperties();
+            assertEquals(List.of(policy.normalize("Blue"), policy.normalize("КРАСНЫЙ")), jdbcTemplate.queryForList(
+                    "SELECT name FROM " + schema + ".color ORDER BY name", String.class));
+            assertEquals(7, jdbcTemplate.queryForObject("SELECT s.quantity FROM " + schema + ".sock_entity s JOIN " +
+                    schema + ".color c ON c.id = s.color_id WHERE c.name = ?", Integer.class, "красный"));
+        } finally {
+            jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+        }
+    }
+}
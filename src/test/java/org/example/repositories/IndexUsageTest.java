@@ -0,0 +1,152 @@
+package org.example.repositories;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Планы запросов остатков по EXPLAIN: остаток лежит в строке товара, поэтому и чтение, и списание
+// идут одним проходом по уникальному индексу товара без соединения.
+// В тестовой БД мало строк и планировщик предпочел бы полный просмотр, поэтому он запрещен -
+// если подходящего индекса нет, в плане все равно останется Seq Scan
+@SpringBootTest
+class IndexUsageTest {
+
+    // Та же форма, что у SQL, который hibernate строит для sumQuantityByColorAndCottonPercentageInRange
+    private static final String SUM_IN_RANGE = """
+            SELECT SUM(s.quantity) FROM sock_entity s
+            WHERE s.color_id = ? AND s.cotton_percentage > ? AND s.cotton_percentage < ?
+            """;
+
+    private static final String FIND_SOCK =
+            "SELECT s.id, s.color_id, s.cotton_percentage FROM sock_entity s WHERE s.color_id = ? AND s.cotton_percentage = ?";
+
+    // StockRepositoryCustomImpl.decrementQuantity
+    private static final String DECREMENT = """
+            UPDATE sock_entity SET quantity = quantity - ?
+            WHERE color_id = ? AND cotton_percentage = ? AND quantity >= ?
+            """;
+
+    // StockRepositoryCustomImpl.cottonHistogram
+    private static final String HISTOGRAM = """
+            SELECT color_id, cotton_percentage, quantity FROM sock_entity
+            WHERE color_id = ANY(?::int[]) AND quantity <> 0
+            ORDER BY color_id, cotton_percentage
+            """;
+
+    // StockRepositoryCustomImpl.sumQuantities
+    private static final String SUM_QUANTITIES = """
+            SELECT SUM(s.quantity)
+            FROM unnest(?::int[], ?::int[], ?::int[]) WITH ORDINALITY AS f(color_id, cotton_from, cotton_to, ord)
+            LEFT JOIN sock_entity s ON s.color_id = f.color_id
+                AND s.cotton_percentage BETWEEN f.cotton_from AND f.cotton_to
+            GROUP BY f.ord
+            ORDER BY f.ord
+            """;
+
+    // StockRepositoryCustomImpl.findSockPage без фильтра по цвету
+    private static final String SOCK_PAGE = """
+            SELECT id, color_id, cotton_percentage, quantity FROM sock_entity
+            WHERE (color_id, cotton_percentage) > (?, ?) AND cotton_percentage BETWEEN ? AND ?
+            ORDER BY color_id, cotton_percentage
+            LIMIT ?
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void sockLookupShouldBeIndexOnlyScan() {
+        List<JsonNode> nodes = plan(FIND_SOCK, 1, 50);
+
+        assertTrue(uses(nodes, "Index Only Scan", "uk_sock_color_cotton"), nodes::toString);
+        assertFalse(uses(nodes, "Seq Scan", null), nodes::toString);
+    }
+
+    @Test
+    void rangeSumShouldBeSingleIndexRangeScan() {
+        List<JsonNode> nodes = plan(SUM_IN_RANGE, 1, 10, 90);
+
+        assertTrue(uses(nodes, "Index Scan", "uk_sock_color_cotton"), nodes::toString);
+        assertFalse(uses(nodes, "Nested Loop", null), nodes::toString);
+        assertFalse(uses(nodes, "Seq Scan", null), nodes::toString);
+    }
+
+    @Test
+    void decrementShouldUpdateRowFoundByUniqueSockIndex() {
+        List<JsonNode> nodes = plan(DECREMENT, 1, 1, 50, 1);
+
+        assertTrue(uses(nodes, "Index Scan", "uk_sock_color_cotton"), nodes::toString);
+        assertFalse(uses(nodes, "Nested Loop", null), nodes::toString);
+        assertFalse(uses(nodes, "Seq Scan", null), nodes::toString);
+    }
+
+    @Test
+    void histogramShouldReadColorsInIndexOrderWithoutSort() {
+        List<JsonNode> nodes = plan(HISTOGRAM, "{1,2,3}");
+
+        assertTrue(uses(nodes, "Index Scan", "uk_sock_color_cotton"), nodes::toString);
+        assertFalse(uses(nodes, "Sort", null), nodes::toString);
+        assertFalse(uses(nodes, "Seq Scan", null), nodes::toString);
+    }
+
+    @Test
+    void sumsForManyFiltersShouldProbeSockIndexPerFilter() {
+        List<JsonNode> nodes = plan(SUM_QUANTITIES, "{1,2}", "{0,10}", "{100,10}");
+
+        assertTrue(uses(nodes, "Nested Loop", null), nodes::toString);
+        assertTrue(uses(nodes, "Index Scan", "uk_sock_color_cotton"), nodes::toString);
+        assertFalse(uses(nodes, "Seq Scan", null), nodes::toString);
+    }
+
+    @Test
+    void sockPageShouldSeekFromCursorInIndexOrder() {
+        List<JsonNode> nodes = plan(SOCK_PAGE, 5, 50, 0, 100, 101);
+
+        assertTrue(nodes.stream().anyMatch(node -> "uk_sock_color_cotton".equals(node.path("Index Name").asText())
+                && node.path("Index Cond").asText().contains("ROW(color_id, cotton_percentage) >")), nodes::toString);
+        assertFalse(uses(nodes, "Sort", null), nodes::toString);
+        assertFalse(uses(nodes, "Seq Scan", null), nodes::toString);
+    }
+
+    // Все узлы плана в порядке обхода
+    private List<JsonNode> plan(String sql, Object... args) {
+        String json = new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+            jdbcTemplate.execute("SET LOCAL enable_bitmapscan = off");
+            return jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + sql, String.class, args);
+        });
+        List<JsonNode> nodes = new ArrayList<>();
+        try {
+            collect(objectMapper.readTree(json).get(0).get("Plan"), nodes);
+        } catch (Exception e) {
+            throw new IllegalStateException(json, e);
+        }
+        return nodes;
+    }
+
+    private static void collect(JsonNode node, List<JsonNode> nodes) {
+        nodes.add(node);
+        if (node.has("Plans")) {
+            node.get("Plans").forEach(child -> collect(child, nodes));
+        }
+    }
+
+    private static boolean uses(List<JsonNode> nodes, String nodeType, String indexName) {
+        return nodes.stream().anyMatch(node -> nodeType.equals(node.get("Node Type").asText())
+                && (indexName == null || indexName.equals(node.path("Index Name").asText())));
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.repositories;
+
+import org.example.dto.SockItemDto;
+import org.example.dto.SockKey;
+import org.example.dto.SockPageDto;
+import org.example.service.StockService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class SockPageTest {
+
+    @Autowired
+    private StockService stockService;
+    @Autowired
+    private StockRepository stockRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String color = "page-" + UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM sock_entity WHERE color_id IN (SELECT id FROM color WHERE name LIKE ?)", color + "%");
+    }
+
+    @Test
+    void pagesShouldFollowCursorWithoutGapsOrRepeats() {
+        Map<SockKey, Integer> stock = new HashMap<>();
+        for (int cotton = 0; cotton <= 100; cotton++) {
+            stock.put(new SockKey(color, cotton), cotton + 1);
+        }
+        stock.put(new SockKey(color + "-other", 50), 1);
+        stockRepository.addQuantities(stock);
+
+        List<SockItemDto> items = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        do {
+            SockPageDto page = stockService.getSocks(color.toUpperCase(), 10, 90, null, after, 7);
+            items.addAll(page.getItems());
+            after = page.getNext();
+            pages++;
+        } while (after != null);
+
+        // 11..89 - 79 товаров, страницы по 7
+        assertEquals(12, pages);
+        assertEquals(79, items.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(color, items.get(i).getColor());
+            assertEquals(11 + i, items.get(i).getCottonPercentage());
+            assertEquals(12 + i, items.get(i).getQuantity());
+        }
+    }
+
+    @Test
+    void unknownColorShouldGiveEmptyLastPage() {
+        SockPageDto page = stockService.getSocks(color + "-missing", null, null, null, null, 10);
+
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getNext());
+    }
+}
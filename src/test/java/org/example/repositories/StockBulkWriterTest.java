@@ -0,0 +1,100 @@
+package org.example.repositories;
+
+import org.example.dto.SockKey;
+import org.example.dto.StockChunk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// COPY и запасной JPA вариант на одних и тех же строках должны дать одинаковые остатки
+@SpringBootTest
+class StockBulkWriterTest {
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private SockRepository sockRepository;
+    @Autowired
+    private StockRepository stockRepository;
+    @Autowired
+    private ColorDictionary colorDictionary;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final String color = "bulk-" + UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM sock_entity WHERE color_id IN (SELECT id FROM color WHERE name LIKE ?)", color + "%");
+    }
+
+    @Test
+    void copyAndJpaShouldProduceIdenticalStock() {
+        StockBulkWriter copy = new CopyStockBulkWriter(dataSource, jdbcTemplate, colorDictionary);
+        StockBulkWriter jpa = new JpaStockBulkWriter(sockRepository, stockRepository, colorDictionary);
+        // Уже существующий остаток, повторы строк и символы, которые экранирует текстовый формат COPY
+        stockRepository.addQuantities(Map.of(new SockKey(color + "-copy", 10), 7, new SockKey(color + "-jpa", 10), 7));
+
+        Map<SockKey, Integer> copyDeltas = write(copy, color + "-copy");
+        Map<SockKey, Integer> jpaDeltas = write(jpa, color + "-jpa");
+
+        assertEquals(Map.of("/10", 5, "\tslash\\/20", 3, "ß/30", 1), byName(copyDeltas, "-copy"));
+        assertEquals(byName(copyDeltas, "-copy"), byName(jpaDeltas, "-jpa"));
+        assertEquals(Map.of("/10", 12, "\tslash\\/20", 3, "ß/30", 1), stock("-copy"));
+        assertEquals(stock("-copy"), stock("-jpa"));
+    }
+
+    @Test
+    void copySessionShouldRequireTransaction() {
+        StockBulkWriter copy = new CopyStockBulkWriter(dataSource, jdbcTemplate, colorDictionary);
+
+        assertThrows(IllegalStateException.class, copy::begin);
+    }
+
+    private Map<SockKey, Integer> write(StockBulkWriter writer, String prefix) {
+        StockChunk first = new StockChunk(3);
+        first.add(prefix, 10, 2);
+        first.add(prefix + "\tslash\\", 20, 1);
+        first.add(prefix, 10, 3);
+        StockChunk second = new StockChunk(2);
+        second.add(prefix + "\tslash\\", 20, 2);
+        second.add(prefix + "ß", 30, 1);
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            StockBulkWriter.Session session = writer.begin();
+            session.write(first);
+            session.write(second);
+            return session.finish();
+        });
+    }
+
+    private Map<String, Integer> stock(String suffix) {
+        Map<SockKey, Integer> stock = new HashMap<>();
+        stockRepository.forEachStock((rowColor, cottonPercentage, quantity) -> {
+            if (rowColor.startsWith(color + suffix)) {
+                stock.put(new SockKey(rowColor, cottonPercentage), quantity);
+            }
+        });
+        return byName(stock, suffix);
+    }
+
+    // Остатки товаров с цветом color + suffix по имени без общего префикса
+    private Map<String, Integer> byName(Map<SockKey, Integer> values, String suffix) {
+        Map<String, Integer> named = new HashMap<>();
+        values.forEach((key, quantity) ->
+                named.put(key.color().substring(color.length() + suffix.length()) + "/" + key.cottonPercentage(), quantity));
+        return named;
+    }
+}
@@ -1,14 +1,28 @@
 package org.example.service;
 
+import com.github.luben.zstd.Zstd;
+import org.example.config.ColorProperties;
+import org.example.dto.ImportErrorDto;
+import org.example.dto.StockChunk;
 import org.example.dto.StockDto;
+import org.example.exception.CsvLineException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -19,7 +33,15 @@ class CsvParserServiceTest {
 
     @BeforeEach
     void setUp() {
-        csvParserService = new CsvParserService();
+        csvParserService = new CsvParserService(keepColors());
+    }
+
+    // Цвета без нормализации: тесты разбора сверяют цвета как в файле
+    static ColorProperties keepColors() {
+        ColorProperties colorProperties = new ColorProperties();
+        colorProperties.setTrim(false);
+        colorProperties.setLowerCase(false);
+        return colorProperties;
     }
 
     @Test
@@ -79,4 +101,162 @@ class CsvParserServiceTest {
         assertTrue(exception.getMessage().contains("Позиция : Red,abc,10"));
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldSplitCsvFileIntoChunks() throws Exception {
+        String csvContent = "Red,50,10\nBlue,30,20\nGreen,40,30\nBlack,10,5\nWhite,0,1";
+        MultipartFile file = new MockMultipartFile("file.csv", "file.csv", "text/csv", csvContent.getBytes());
+
+        List<StockChunk> chunks = new ArrayList<>();
+        csvParserService.parseCsvFile(file, 2, chunks::add);
+
+        assertEquals(3, chunks.size());
+        assertEquals(2, chunks.get(0).size());
+        assertEquals(2, chunks.get(1).size());
+        assertEquals(1, chunks.get(2).size());
+        assertEquals("White", chunks.get(2).getColor(0));
+    }
+
+    @Test
+    void shouldHandleLineEndingsAndTrailingCommasLikeReadLine() throws Exception {
+        String csvContent = "Red,50,10\r\nBlue,30,20,,\rGreen,40,30\n";
+        MultipartFile file = new MockMultipartFile("file.csv", "file.csv", "text/csv", csvContent.getBytes());
+
+        List<StockDto> stockDtoList = csvParserService.parseCsvFile(file);
+
+        assertEquals(3, stockDtoList.size());
+        assertEquals("Blue", stockDtoList.get(1).getSockDto().getColor());
+        assertEquals(20, stockDtoList.get(1).getQuantity());
+        assertEquals("Green", stockDtoList.get(2).getSockDto().getColor());
+    }
+
+    @Test
+    void shouldNormalizeColorsOncePerDistinctColor() throws Exception {
+        String csvContent = "Red,50,10\n red ,30,1\nRED,20,2\nКрасный,10,3\n";
+        List<StockChunk> chunks = new ArrayList<>();
+
+        new CsvParserService(new ColorProperties()).parseCsv(
+                new ByteArrayInputStream(csvContent.getBytes(StandardCharsets.UTF_8)), 10, chunks::add);
+
+        StockChunk chunk = chunks.get(0);
+        assertEquals("red", chunk.getColor(0));
+        assertEquals("red", chunk.getColor(1));
+        assertEquals("red", chunk.getColor(2));
+        assertEquals("красный", chunk.getColor(3));
+    }
+
+    @Test
+    void shouldDecodeUtf8ColorsAndReuseSameInstance() throws Exception {
+        String csvContent = "Красный,50,10\nКрасный,30,-20\n";
+        MultipartFile file = new MockMultipartFile("file.csv", "file.csv", "text/csv",
+                csvContent.getBytes(StandardCharsets.UTF_8));
+
+        List<StockDto> stockDtoList = csvParserService.parseCsvFile(file);
+
+        assertEquals("Красный", stockDtoList.get(0).getSockDto().getColor());
+        assertSame(stockDtoList.get(0).getSockDto().getColor(), stockDtoList.get(1).getSockDto().getColor());
+        assertEquals(-20, stockDtoList.get(1).getQuantity());
+    }
+
+    @Test
+    void shouldParseLinesLongerThanReadBuffer() throws Exception {
+        String color = "x".repeat(200_000);
+        String csvContent = "Red,50,10\n" + color + ",30,20";
+        MultipartFile file = new MockMultipartFile("file.csv", "file.csv", "text/csv", csvContent.getBytes());
+
+        List<StockDto> stockDtoList = csvParserService.parseCsvFile(file);
+
+        assertEquals(2, stockDtoList.size());
+        assertEquals(color, stockDtoList.get(1).getSockDto().getColor());
+    }
+
+    @Test
+    void shouldRejectQuantityOverflow() {
+        String csvContent = "Red,50,2147483648";
+        MultipartFile file = new MockMultipartFile("file.csv", "file.csv", "text/csv", csvContent.getBytes());
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> csvParserService.parseCsvFile(file));
+
+        assertTrue(exception.getMessage().contains("Позиция : Red,50,2147483648"));
+    }
+
+
+    @Test
+    void shouldReportLineNumberOfInvalidRow() {
+        MultipartFile file = new MockMultipartFile("file.csv", "file.csv", "text/csv",
+                "Red,50,10\r\nBlue,30,20\r\nGreen,40".getBytes());
+
+        CsvLineException exception = assertThrows(CsvLineException.class, () -> csvParserService.parseCsvFile(file));
+
+        assertEquals(3, exception.getLineNumber());
+        assertEquals("Строка 3. Ожидалось 3 столбца, но получено 2", exception.getMessage());
+    }
+
+    @Test
+    void shouldCollectInvalidRowsAndKeepParsing() throws Exception {
+        MultipartFile file = new MockMultipartFile("file.csv", "file.csv", "text/csv",
+                "Red,50,10\nBlue,x,20\n\nGreen,40,30\nBlack,10".getBytes());
+        ImportErrors errors = new ImportErrors(10);
+        List<StockChunk> chunks = new ArrayList<>();
+
+        csvParserService.parseCsvFile(file, 10, chunks::add, errors);
+
+        assertEquals(1, chunks.size());
+        assertEquals(2, chunks.get(0).size());
+        assertEquals("Green", chunks.get(0).getColor(1));
+        assertEquals(3, errors.getCount());
+        assertEquals(new ImportErrorDto(2, "Blue,x,20", "Позиция : Blue,x,20"), errors.getErrors().get(0));
+        assertEquals(new ImportErrorDto(3, "", "Ожидалось 3 столбца, но получено 1"), errors.getErrors().get(1));
+        assertEquals(new ImportErrorDto(5, "Black,10", "Ожидалось 3 столбца, но получено 2"), errors.getErrors().get(2));
+    }
+
+    @Test
+    void shouldDecodeGzipAndZstdUploadsWhileParsing() throws Exception {
+        byte[] csv = "Red,50,10\nBlue,30,20\nGreen,40,30".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(csv);
+        }
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("file", "stock.csv.gz", "application/gzip", gzip.toByteArray()),
+                new MockMultipartFile("file", "stock.csv.zst", "application/octet-stream", Zstd.compress(csv)));
+
+        for (MultipartFile file : files) {
+            List<StockChunk> chunks = new ArrayList<>();
+            csvParserService.parseCsvFile(file, 2, chunks::add);
+
+            assertEquals(2, chunks.size(), file.getOriginalFilename());
+            assertEquals("Green", chunks.get(1).getColor(0));
+            assertEquals(30, chunks.get(1).getQuantity(0));
+        }
+    }
+
+    @Test
+    void shouldAcceptOnlyCsvAndCompressedCsvNames() {
+        assertTrue(csvParserService.isCsvFile(new MockMultipartFile("file", "stock.csv", "text/csv", new byte[0])));
+        assertTrue(csvParserService.isCsvFile(new MockMultipartFile("file", "stock.csv.gz", "application/x-gzip", new byte[0])));
+        assertTrue(csvParserService.isCsvFile(new MockMultipartFile("file", "stock.csv.zst", "application/zstd", new byte[0])));
+        assertFalse(csvParserService.isCsvFile(new MockMultipartFile("file", "stock.gz", "application/gzip", new byte[0])));
+        assertFalse(csvParserService.isCsvFile(new MockMultipartFile("file", "stock.csv", "application/gzip", new byte[0])));
+        assertFalse(csvParserService.isCsvFile(new MockMultipartFile("file", "stock.csv.gz", null, new byte[0])));
+    }
+
+    @Test
+    void shouldParseMappedFileAcrossWindowBoundaries(@TempDir Path dir) throws Exception {
+        // Окно в 8 байт: строки режутся окнами посередине, пара \r\n попадает на границу, одна строка длиннее окна
+        String csv = "Red,50,10\r\nBlue,30,20\rVeryLongColorName,40,30\nBlack,10,5";
+        Path file = Files.writeString(dir.resolve("stock.csv"), csv);
+
+        List<StockChunk> mapped = new ArrayList<>();
+        csvParserService.parseMappedCsv(file, 10, mapped::add, null, 8);
+        List<StockChunk> streamed = new ArrayList<>();
+        csvParserService.parseCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 10, streamed::add);
+
+        assertEquals(1, mapped.size());
+        assertEquals(4, mapped.get(0).size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(streamed.get(0).getColor(i), mapped.get(0).getColor(i));
+            assertEquals(streamed.get(0).getCottonPercentage(i), mapped.get(0).getCottonPercentage(i));
+            assertEquals(streamed.get(0).getQuantity(i), mapped.get(0).getQuantity(i));
+        }
+    }
+}
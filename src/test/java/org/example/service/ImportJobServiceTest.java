@@ -0,0 +1,137 @@
+package org.example.service;
+
+import org.example.config.ImportProperties;
+import org.example.dto.ImportJobDto;
+import org.example.exception.ImportJobNotFoundException;
+import org.example.exception.TooManyImportJobsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ImportJobServiceTest {
+
+    @Mock
+    private StockImportService stockImportService;
+
+    private final ImportProperties importProperties = new ImportProperties();
+    private final BlockingQueue<String> started = new LinkedBlockingQueue<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executor;
+    private ImportJobService importJobService;
+
+    @BeforeEach
+    void setUp() {
+        importProperties.setTenantConcurrency(1);
+        importProperties.setTenantQueueCapacity(1);
+        importProperties.setTenants(List.of("A", "B"));
+        executor = Executors.newFixedThreadPool(4);
+        importJobService = new ImportJobService(stockImportService, new CsvParserService(CsvParserServiceTest.keepColors()), importProperties,
+                new ConcurrentTaskExecutor(executor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldLimitConcurrentJobsPerTenant() throws Exception {
+        when(stockImportService.importCsv(any(Path.class), anyString(), any())).thenAnswer(invocation -> {
+            started.add(invocation.getArgument(1));
+            release.await();
+            return 1L;
+        });
+
+        importJobService.submit(csvFile("a1.csv"), "A");
+        ImportJobDto queued = importJobService.submit(csvFile("a2.csv"), "A");
+        importJobService.submit(csvFile("b1.csv"), "B");
+
+        // Задача другого клиента не ждет, вторая задача клиента A ждет первую
+        assertNotNull(started.poll(5, TimeUnit.SECONDS));
+        assertNotNull(started.poll(5, TimeUnit.SECONDS));
+        assertNull(started.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(ImportJobDto.Status.QUEUED, importJobService.getJob(queued.getId()).getStatus());
+        assertThrows(TooManyImportJobsException.class, () -> importJobService.submit(csvFile("a3.csv"), "A"));
+
+        release.countDown();
+        assertEquals("a2.csv", started.poll(5, TimeUnit.SECONDS));
+        assertEquals(ImportJobDto.Status.COMPLETED, awaitFinished(queued.getId()).getStatus());
+    }
+
+    @Test
+    void unknownTenantsShouldShareDefaultLimit() throws Exception {
+        when(stockImportService.importCsv(any(Path.class), anyString(), any())).thenAnswer(invocation -> {
+            started.add(invocation.getArgument(1));
+            release.await();
+            return 1L;
+        });
+
+        importJobService.submit(csvFile("x1.csv"), "X");
+        // Новое значение заголовка не дает новой очереди
+        ImportJobDto queued = importJobService.submit(csvFile("y1.csv"), "Y");
+
+        assertEquals("x1.csv", started.poll(5, TimeUnit.SECONDS));
+        assertNull(started.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(ImportJobDto.Status.QUEUED, importJobService.getJob(queued.getId()).getStatus());
+        assertThrows(TooManyImportJobsException.class, () -> importJobService.submit(csvFile("z1.csv"), "Z"));
+
+        release.countDown();
+        assertEquals("y1.csv", started.poll(5, TimeUnit.SECONDS));
+        assertEquals(ImportJobDto.Status.COMPLETED, awaitFinished(queued.getId()).getStatus());
+    }
+
+    @Test
+    void shouldReportFailure() throws Exception {
+        when(stockImportService.importCsv(any(Path.class), anyString(), any()))
+                .thenThrow(new IllegalArgumentException("Позиция : Red,x,1"));
+
+        ImportJobDto job = importJobService.submit(csvFile("broken.csv"), "A");
+
+        ImportJobDto finished = awaitFinished(job.getId());
+        assertEquals(ImportJobDto.Status.FAILED, finished.getStatus());
+        assertEquals("Позиция : Red,x,1", finished.getError());
+    }
+
+    @Test
+    void shouldRejectUnknownJob() {
+        assertThrows(ImportJobNotFoundException.class, () -> importJobService.getJob("missing"));
+    }
+
+    private ImportJobDto awaitFinished(String id) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            ImportJobDto job = importJobService.getJob(id);
+            if (job.getFinishedAt() != null) {
+                return job;
+            }
+            Thread.sleep(50);
+        }
+        fail("Задача " + id + " не завершилась");
+        return null;
+    }
+
+    private static MockMultipartFile csvFile(String name) {
+        return new MockMultipartFile("file", name, "text/csv", "Red,50,10".getBytes(StandardCharsets.UTF_8));
+    }
+}
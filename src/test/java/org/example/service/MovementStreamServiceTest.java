@@ -0,0 +1,106 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.config.ImportProperties;
+import org.example.dto.SockKey;
+import org.example.dto.StockMovement;
+import org.example.exception.InsufficientStockException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MovementStreamServiceTest {
+
+    @Mock
+    private StockService stockService;
+
+    private final ImportProperties importProperties = new ImportProperties();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private MovementStreamService movementStreamService;
+
+    @BeforeEach
+    void setUp() {
+        importProperties.setMovementChunkSize(2);
+        movementStreamService = new MovementStreamService(stockService, importProperties, objectMapper);
+    }
+
+    @Test
+    void shouldApplyMovementsInChunksAndAcknowledgeEachChunk() throws Exception {
+        when(stockService.applyMovements(anyList())).thenAnswer(invocation -> {
+            List<StockMovement> movements = invocation.getArgument(0);
+            List<RuntimeException> results = new ArrayList<>();
+            for (StockMovement movement : movements) {
+                results.add(movement.quantity() == -100 ? new InsufficientStockException("товара носки: Red/50 недостаточно на складе") : null);
+            }
+            return results;
+        });
+
+        List<JsonNode> acks = process("""
+                {"color":"Red","cottonPercentage":50,"quantity":10}
+                {"color":"Red","cottonPercentage":50,"quantity":-100}
+                {"color":"Blue","cottonPercentage":150,"quantity":1}
+                {"color":"Blue","cottonPercentage":30,"quantity":"many","note":{"a":[1,2]}}
+                {"color":"Blue","cottonPercentage":30,"quantity":-1,"note":{"a":[1,2]}}
+                """);
+
+        assertEquals(3, acks.size());
+        assertEquals(1, acks.get(0).get("applied").asInt());
+        assertEquals(2, acks.get(0).get("rejected").get(0).get("line").asInt());
+        assertEquals("Нехватка носков на складе. товара носки: Red/50 недостаточно на складе",
+                acks.get(0).get("rejected").get(0).get("reason").asText());
+        // Некорректные строки отклоняются без обращения к БД
+        assertEquals(0, acks.get(1).get("applied").asInt());
+        assertEquals(List.of(3, 4), lines(acks.get(1).get("rejected")));
+        assertEquals(5, acks.get(2).get("firstLine").asInt());
+        assertEquals(1, acks.get(2).get("applied").asInt());
+
+        verify(stockService, times(2)).applyMovements(anyList());
+        verify(stockService).applyMovements(List.of(new StockMovement(new SockKey("Blue", 30), -1)));
+    }
+
+    @Test
+    void shouldStopAtMalformedJsonAfterApplyingPreviousLines() throws Exception {
+        when(stockService.applyMovements(anyList())).thenReturn(Arrays.asList((RuntimeException) null));
+
+        List<JsonNode> acks = process("""
+                {"color":"Red","cottonPercentage":50,"quantity":10}
+                {"color":"Red",
+                """);
+
+        assertEquals(2, acks.size());
+        assertEquals(1, acks.get(0).get("applied").asInt());
+        assertTrue(acks.get(1).get("error").asText().startsWith("Строка 3. Некорректный JSON"), acks.get(1).toString());
+        verify(stockService, times(1)).applyMovements(anyList());
+    }
+
+    private List<JsonNode> process(String ndjson) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        movementStreamService.process(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), out);
+        List<JsonNode> acks = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            acks.add(objectMapper.readTree(line));
+        }
+        return acks;
+    }
+
+    private static List<Integer> lines(JsonNode rejected) {
+        List<Integer> lines = new ArrayList<>();
+        rejected.forEach(node -> lines.add(node.get("line").asInt()));
+        return lines;
+    }
+}
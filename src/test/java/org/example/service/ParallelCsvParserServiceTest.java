@@ -0,0 +1,113 @@
+package org.example.service;
+
+import org.example.dto.SockKey;
+import org.example.exception.CsvLineException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelCsvParserServiceTest {
+
+    // Больше нескольких сегментов по 1 МБ
+    private static final int LINES = 300_000;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final ParallelCsvParserService parallelCsvParserService = new ParallelCsvParserService(pool);
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void shouldAggregateSegmentsLikeSequentialParse() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            csv.append(i % 3 == 0 ? "Красный" : "color-" + i % 17).append(',').append(i % 101).append(',')
+                    .append(i % 7 + 1).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(tempDir.resolve("socks.csv"), bytes);
+
+        ParallelCsvParserService.Result result = parallelCsvParserService.parse(file);
+
+        Map<SockKey, Integer> expected = new HashMap<>();
+        CsvByteParser parser = new CsvByteParser();
+        parser.parse(new ByteArrayInputStream(bytes), (color, cottonPercentage, quantity) ->
+                expected.merge(new SockKey(color, cottonPercentage), quantity, Integer::sum));
+        assertEquals(LINES, result.rows());
+        assertEquals(expected, result.quantities());
+    }
+
+    @Test
+    void shouldSplitFileWithCarriageReturnLineEndings() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            csv.append("color-").append(i % 17).append(',').append(i % 101).append(',').append(i % 7 + 1).append('\r');
+        }
+        byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(tempDir.resolve("socks.csv"), bytes);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertTrue(parallelCsvParserService.split(channel).size() > 1);
+        }
+        // Окно меньше сегмента: сегмент читается несколькими отображениями
+        ParallelCsvParserService.Result result = parallelCsvParserService.parse(file, 64 * 1024);
+
+        Map<SockKey, Integer> expected = new HashMap<>();
+        new CsvByteParser().parse(new ByteArrayInputStream(bytes), (color, cottonPercentage, quantity) ->
+                expected.merge(new SockKey(color, cottonPercentage), quantity, Integer::sum));
+        assertEquals(LINES, result.rows());
+        assertEquals(expected, result.quantities());
+    }
+
+    @Test
+    void shouldParseLineLongerThanWindow() throws Exception {
+        String color = "c".repeat(100);
+        Path file = Files.writeString(tempDir.resolve("long.csv"), "Red,50,1\r\n" + color + ",10,2\r\nRed,50,3");
+
+        ParallelCsvParserService.Result result = parallelCsvParserService.parse(file, 16);
+
+        assertEquals(3, result.rows());
+        assertEquals(Map.of(new SockKey("Red", 50), 4, new SockKey(color, 10), 2), result.quantities());
+    }
+
+    @Test
+    void shouldReportLineNumberFromStartOfFile() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 1; i <= LINES; i++) {
+            csv.append(i == 250_001 ? "Red,abc,1" : "Red,50,1").append('\n');
+        }
+        Path file = Files.writeString(tempDir.resolve("broken.csv"), csv);
+
+        CsvLineException exception = assertThrows(CsvLineException.class, () -> parallelCsvParserService.parse(file));
+
+        assertEquals(250_001, exception.getLineNumber());
+        assertEquals("Строка 250001. Позиция : Red,abc,1", exception.getMessage());
+    }
+
+    @Test
+    void shouldParseEmptyFile() throws Exception {
+        Path file = Files.createFile(tempDir.resolve("empty.csv"));
+
+        ParallelCsvParserService.Result result = parallelCsvParserService.parse(file);
+
+        assertEquals(0, result.rows());
+        assertTrue(result.quantities().isEmpty());
+    }
+}
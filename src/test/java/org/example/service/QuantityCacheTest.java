@@ -0,0 +1,194 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.config.QuantityCacheProperties;
+import org.example.dto.CottonRange;
+import org.example.dto.SockKey;
+import org.example.event.SockUpdatedEvent;
+import org.example.event.StockChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantityCacheTest {
+
+    private static final int CALLERS = 50;
+    private static final CottonRange ABOVE_50 = CottonRange.of(50, null, null);
+
+    private final QuantityCacheProperties properties = new QuantityCacheProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private QuantityCache quantityCache;
+
+    @BeforeEach
+    void setUp() {
+        properties.setEnabled(true);
+        quantityCache = new QuantityCache(properties, meterRegistry);
+    }
+
+    @Test
+    void repeatedQueryShouldNotReachDatabase() {
+        assertEquals(7, quantityCache.get("red", ABOVE_50, () -> load(7)));
+        assertEquals(7, quantityCache.get("red", ABOVE_50, () -> load(8)));
+        // Пустой диапазон тоже ответ
+        assertNull(quantityCache.get("blue", ABOVE_50, () -> load(null)));
+        assertNull(quantityCache.get("blue", ABOVE_50, () -> load(1)));
+
+        assertEquals(2, loads.get());
+        assertEquals(2, meterRegistry.get("cache.gets").tag("cache", QuantityCache.CACHE_NAME)
+                .tag("result", "hit").functionCounter().count());
+        assertEquals(2, meterRegistry.get("cache.gets").tag("cache", QuantityCache.CACHE_NAME)
+                .tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void stockChangeShouldInvalidateOnlyItsColors() {
+        quantityCache.get("red", ABOVE_50, () -> load(7));
+        quantityCache.get("red", CottonRange.of(null, null, 10), () -> load(3));
+        quantityCache.get("blue", ABOVE_50, () -> load(11));
+
+        quantityCache.onStockChanged(new StockChangedEvent(Map.of(new SockKey("red", 10), 2)));
+
+        // Сбрасываются все диапазоны цвета, а не только затронутый процент хлопка
+        assertEquals(9, quantityCache.get("red", ABOVE_50, () -> load(9)));
+        assertEquals(5, quantityCache.get("red", CottonRange.of(null, null, 10), () -> load(5)));
+        assertEquals(11, quantityCache.get("blue", ABOVE_50, () -> load(12)));
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    void sockUpdateShouldInvalidateBothColors() {
+        quantityCache.get("red", ABOVE_50, () -> load(7));
+        quantityCache.get("blue", ABOVE_50, () -> load(11));
+
+        quantityCache.onSockUpdated(new SockUpdatedEvent(new SockKey("red", 60), new SockKey("blue", 60)));
+
+        assertEquals(0, quantityCache.get("red", ABOVE_50, () -> load(0)));
+        assertEquals(18, quantityCache.get("blue", ABOVE_50, () -> load(18)));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void valueLoadedBeforeCommitShouldNotOutliveIt() {
+        // Запрос прочитал остаток до коммита записи, а в кеш положил после сброса
+        assertEquals(7, quantityCache.get("red", ABOVE_50, () -> {
+            quantityCache.invalidate("red");
+            return load(7);
+        }));
+
+        assertEquals(4, quantityCache.get("red", ABOVE_50, () -> load(4)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void disabledCacheShouldAlwaysLoad() {
+        properties.setEnabled(false);
+
+        quantityCache.get("red", ABOVE_50, () -> load(7));
+        quantityCache.get("red", ABOVE_50, () -> load(7));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void concurrentQueriesShouldShareOneDatabaseQuery() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> quantityCache.get("red", ABOVE_50, () -> {
+                await(release);
+                return load(7);
+            })));
+        }
+        // Запрос в БД держится, пока к нему не присоединятся все остальные
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<Integer> result : results) {
+            assertEquals(7, result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedQueryShouldFailEveryWaiterAndNotBeCached() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Integer> leader = executor.submit(() -> quantityCache.get("red", ABOVE_50, () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("БД недоступна");
+        }));
+        // Запрос в БД начался
+        await(started);
+        Future<Integer> follower = executor.submit(() -> quantityCache.get("red", ABOVE_50, () -> load(1)));
+        awaitCoalesced(1);
+        release.countDown();
+
+        ExecutionException leaderFailure = assertThrows(ExecutionException.class, () -> leader.get(10, TimeUnit.SECONDS));
+        ExecutionException followerFailure = assertThrows(ExecutionException.class, () -> follower.get(10, TimeUnit.SECONDS));
+        assertSame(leaderFailure.getCause(), followerFailure.getCause());
+        executor.shutdown();
+
+        assertEquals(5, quantityCache.get("red", ABOVE_50, () -> load(5)));
+    }
+
+    @Test
+    void queryAfterWriteShouldNotJoinQueryStartedBeforeIt() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Integer> before = executor.submit(() -> quantityCache.get("red", ABOVE_50, () -> {
+            started.countDown();
+            await(release);
+            return load(7);
+        }));
+        // Запрос в БД начался
+        await(started);
+
+        quantityCache.invalidate("red");
+        assertEquals(9, quantityCache.get("red", ABOVE_50, () -> load(9)));
+
+        release.countDown();
+        assertEquals(7, before.get(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(9, quantityCache.get("red", ABOVE_50, () -> load(10)));
+        assertEquals(0, meterRegistry.get(QuantityCache.COALESCED_METRIC).counter().count());
+    }
+
+    private void awaitCoalesced(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (meterRegistry.get(QuantityCache.COALESCED_METRIC).counter().count() < expected) {
+            assertTrue(System.nanoTime() < deadline, "Запросы не присоединились к запросу в БД");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Integer load(Integer quantity) {
+        loads.incrementAndGet();
+        return quantity;
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.service;
+
+import org.example.config.ImportProperties;
+import org.example.dto.ImportMode;
+import org.example.exception.ImportFileAccessException;
+import org.example.exception.ImportFileNotFoundException;
+import org.example.exception.InvalidFileTypeException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class ServerFileImportServiceTest {
+
+    @Mock
+    private StockImportService stockImportService;
+
+    @TempDir
+    Path tempDir;
+
+    private final ImportProperties importProperties = new ImportProperties();
+    private Path importDir;
+    private ServerFileImportService serverFileImportService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        importDir = Files.createDirectory(tempDir.resolve("import"));
+        importProperties.setDirectory(importDir.toString());
+        serverFileImportService = new ServerFileImportService(stockImportService, importProperties);
+    }
+
+    @Test
+    void shouldImportFileUnderImportDirectory() throws Exception {
+        Path file = Files.writeString(Files.createDirectory(importDir.resolve("nightly")).resolve("stock.csv"), "Red,50,10");
+
+        serverFileImportService.importFile("nightly/../nightly/stock.csv", ImportMode.APPLY);
+
+        verify(stockImportService).importCsv(eq(file.toRealPath()), eq("stock.csv"), eq(ImportMode.APPLY), any());
+    }
+
+    @Test
+    void shouldRejectPathsOutsideImportDirectory() throws Exception {
+        Path outside = Files.writeString(tempDir.resolve("secret.csv"), "Red,50,10");
+        Files.createSymbolicLink(importDir.resolve("link.csv"), outside);
+
+        assertThrows(ImportFileAccessException.class, () -> serverFileImportService.importFile("../secret.csv", ImportMode.APPLY));
+        assertThrows(ImportFileAccessException.class, () -> serverFileImportService.importFile(outside.toString(), ImportMode.APPLY));
+        assertThrows(ImportFileAccessException.class, () -> serverFileImportService.importFile("link.csv", ImportMode.APPLY));
+        verifyNoInteractions(stockImportService);
+    }
+
+    @Test
+    void shouldRejectMissingOrNonCsvFilesAndDisabledImport() throws Exception {
+        Files.writeString(importDir.resolve("stock.txt"), "Red,50,10");
+
+        assertThrows(ImportFileNotFoundException.class, () -> serverFileImportService.importFile("missing.csv", ImportMode.APPLY));
+        assertThrows(InvalidFileTypeException.class, () -> serverFileImportService.importFile("stock.txt", ImportMode.APPLY));
+        importProperties.setDirectory("");
+        assertThrows(ImportFileAccessException.class, () -> serverFileImportService.importFile("stock.csv", ImportMode.APPLY));
+        verifyNoInteractions(stockImportService);
+    }
+}
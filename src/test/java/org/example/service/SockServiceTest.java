@@ -5,17 +5,21 @@ import org.example.dto.UpdateSockDto;
 import org.example.entity.SockEntity;
 import org.example.exception.EntityAlreadyExistsException;
 import org.example.exception.NotFoundProductException;
+import org.example.repositories.ColorDictionary;
 import org.example.repositories.SockRepository;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
@@ -25,9 +29,21 @@ class SockServiceTest {
     @Mock
     private SockRepository sockRepository;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private ColorDictionary colorDictionary;
+
     @InjectMocks
     private SockService sockService;
 
+    // Нормализация цвета проверяется в ColorDictionaryTest, здесь цвета остаются как есть
+    @BeforeEach
+    void setUp() {
+        lenient().when(colorDictionary.normalize(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
 
     @Test
     void updateSockEntity_ShouldThrowEntityAlreadyExistsException_WhenDuplicateFound() {
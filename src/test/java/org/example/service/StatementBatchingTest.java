@@ -0,0 +1,227 @@
+package org.example.service;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.example.config.ImportProperties;
+import org.example.dto.QuantityFilterDto;
+import org.example.dto.SockKey;
+import org.example.entity.SockEntity;
+import org.example.repositories.ColorDictionary;
+import org.example.repositories.SockRepository;
+import org.example.repositories.StockRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Считает запросы, которые доходят до JDBC: запись должна идти пакетами, а не запросом на строку
+@SpringBootTest
+@Import(StatementBatchingTest.CountingDataSourceConfig.class)
+class StatementBatchingTest {
+
+    private static final List<Execution> EXECUTIONS = Collections.synchronizedList(new ArrayList<>());
+
+    @Autowired
+    private StockImportService stockImportService;
+    @Autowired
+    private SockRepository sockRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ColorDictionary colorDictionary;
+    @Autowired
+    private StockService stockService;
+    @Autowired
+    private StockRepository stockRepository;
+    @Autowired
+    private ImportProperties importProperties;
+
+    private final String color = "batching-" + UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        EXECUTIONS.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM sock_entity WHERE color_id IN (SELECT id FROM color WHERE name LIKE ?)", color + "%");
+    }
+
+    @Test
+    void csvImportOf10kRowsShouldUseConstantNumberOfStatements() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            csv.append(color).append('-').append(i / 100).append(',').append(i % 100).append(',').append(1).append('\n');
+        }
+        MockMultipartFile file = new MockMultipartFile("file", "stock.csv", "text/csv",
+                csv.toString().getBytes(StandardCharsets.UTF_8));
+        EXECUTIONS.clear();
+
+        assertEquals(10_000, stockImportService.importCsv(file));
+
+        // Две порции по 5000 строк, на порцию вставка новых цветов в словарь и один upsert товаров вместе с остатками
+        assertEquals(4, EXECUTIONS.size(), EXECUTIONS::toString);
+        assertEquals(10_000, jdbcTemplate.queryForObject(
+                "SELECT COUNT(quantity) FROM sock_entity WHERE color_id IN (SELECT id FROM color WHERE name LIKE ?)",
+                Integer.class, color + "%"));
+    }
+
+    @Test
+    void csvImportAboveBulkThresholdShouldMergeOncePerFile() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 60_000; i++) {
+            csv.append(color).append('-').append(i / 1000).append(',').append(i % 100).append(',').append(1).append('\n');
+        }
+        MockMultipartFile file = new MockMultipartFile("file", "stock.csv", "text/csv",
+                csv.toString().getBytes(StandardCharsets.UTF_8));
+        EXECUTIONS.clear();
+
+        importProperties.setCommitMode(ImportProperties.CommitMode.FILE);
+        try {
+            assertEquals(60_000, stockImportService.importCsv(file));
+        } finally {
+            importProperties.setCommitMode(ImportProperties.CommitMode.CHUNK);
+        }
+
+        // Первые 50000 строк - 10 порций обычным путем: новые цвета в словарь и upsert товаров. Остальные 2 порции
+        // одним COPY: цвета импорта с добавлением новых в словарь, одно слияние и очистка промежуточной таблицы
+        assertEquals(10 * 2 + 4, EXECUTIONS.size(), EXECUTIONS::toString);
+        assertEquals(1, executions("with delta").size());
+        assertEquals(6_000, jdbcTemplate.queryForObject(
+                "SELECT COUNT(quantity) FROM sock_entity WHERE color_id IN (SELECT id FROM color WHERE name LIKE ?)",
+                Integer.class, color + "%"));
+        assertEquals(60_000, jdbcTemplate.queryForObject(
+                "SELECT SUM(quantity) FROM sock_entity WHERE color_id IN (SELECT id FROM color WHERE name LIKE ?)",
+                Integer.class, color + "%"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stock_import_staging WHERE color LIKE ?",
+                Integer.class, color + "%"));
+    }
+
+    @Test
+    void csvImportInChunkModeShouldNotUseBulkWrite() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 60_000; i++) {
+            csv.append(color).append('-').append(i / 1000).append(',').append(i % 100).append(',').append(1).append('\n');
+        }
+        MockMultipartFile file = new MockMultipartFile("file", "stock.csv", "text/csv",
+                csv.toString().getBytes(StandardCharsets.UTF_8));
+        EXECUTIONS.clear();
+
+        assertEquals(60_000, stockImportService.importCsv(file));
+
+        // 12 порций, каждая своей транзакцией: новые цвета в словарь и один upsert товаров
+        assertEquals(12 * 2, EXECUTIONS.size(), EXECUTIONS::toString);
+        assertTrue(executions("with delta").isEmpty());
+        assertEquals(60_000, jdbcTemplate.queryForObject(
+                "SELECT SUM(quantity) FROM sock_entity WHERE color_id IN (SELECT id FROM color WHERE name LIKE ?)",
+                Integer.class, color + "%"));
+    }
+
+    @Test
+    void quantitiesForManyFiltersShouldTakeOneStatement() {
+        Map<SockKey, Integer> stock = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            stock.put(new SockKey(color + "-" + i, i * 10), i + 1);
+        }
+        stockRepository.addQuantities(stock);
+        List<QuantityFilterDto> filters = new ArrayList<>();
+        for (int i = 9; i >= 0; i--) {
+            filters.add(new QuantityFilterDto(color + "-" + i, null, null, i * 10));
+        }
+        filters.add(new QuantityFilterDto(color + "-missing", 10, null, null));
+        filters.add(new QuantityFilterDto(color + "-1", null, 10, null));
+        EXECUTIONS.clear();
+
+        List<Integer> quantities = stockService.getSocksQuantities(filters);
+
+        assertEquals(Arrays.asList(10, 9, 8, 7, 6, 5, 4, 3, 2, 1, null, null), quantities);
+        // Одна сумма на все фильтры и поиск в БД неизвестного словарю цвета
+        assertEquals(1, executions("select sum").size(), EXECUTIONS::toString);
+        assertEquals(2, EXECUTIONS.size(), EXECUTIONS::toString);
+    }
+
+    @Test
+    void newEntitiesShouldBeInsertedInJdbcBatches() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            colorDictionary.register(color);
+            List<SockEntity> socks = new ArrayList<>();
+            for (int i = 0; i < 120; i++) {
+                socks.add(new SockEntity(null, color, i));
+            }
+            sockRepository.saveAll(socks);
+        });
+
+        List<Execution> inserts = executions("insert into sock_entity");
+        // batch_size 50: три пакета вместо 120 отдельных вставок
+        assertEquals(3, inserts.size(), inserts::toString);
+        assertTrue(inserts.stream().allMatch(Execution::batch));
+        assertEquals(120, inserts.stream().mapToInt(Execution::batchSize).sum());
+        // Ключи блоками по 50 - три обращения к последовательности
+        assertEquals(3, executions("select nextval").size());
+    }
+
+    private static List<Execution> executions(String prefix) {
+        synchronized (EXECUTIONS) {
+            return EXECUTIONS.stream().filter(e -> e.query().startsWith(prefix)).toList();
+        }
+    }
+
+    private record Execution(String query, boolean batch, int batchSize) {
+    }
+
+    @TestConfiguration
+    static class CountingDataSourceConfig {
+
+        @Bean
+        static BeanPostProcessor countingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource) {
+                        return ProxyDataSourceBuilder.create(dataSource).listener(new CountingListener()).build();
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    private static class CountingListener implements QueryExecutionListener {
+
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            String query = queryInfoList.get(0).getQuery().trim().toLowerCase();
+            EXECUTIONS.add(new Execution(query, execInfo.isBatch(), execInfo.isBatch() ? execInfo.getBatchSize() : 1));
+        }
+    }
+}
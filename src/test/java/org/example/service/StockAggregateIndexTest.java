@@ -0,0 +1,104 @@
+package org.example.service;
+
+import org.example.config.AggregateIndexProperties;
+import org.example.dto.CottonRange;
+import org.example.dto.SockKey;
+import org.example.event.SockUpdatedEvent;
+import org.example.event.StockChangedEvent;
+import org.example.repositories.StockRepository;
+import org.example.repositories.StockRepositoryCustom.StockRowCallback;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@ExtendWith(MockitoExtension.class)
+class StockAggregateIndexTest {
+
+    @Mock
+    private StockRepository stockRepository;
+
+    private final List<Object[]> database = new ArrayList<>();
+    private StockAggregateIndex stockAggregateIndex;
+
+    @BeforeEach
+    void setUp() {
+        database.add(new Object[]{"red", 10, 5});
+        database.add(new Object[]{"red", 50, 7});
+        database.add(new Object[]{"red", 100, 0});
+        database.add(new Object[]{"red", 150, 2});
+        database.add(new Object[]{"blue", 50, 11});
+        doAnswer(invocation -> {
+            StockRowCallback callback = invocation.getArgument(0);
+            database.forEach(row -> callback.accept((String) row[0], (int) row[1], (int) row[2]));
+            return null;
+        }).when(stockRepository).forEachStock(any());
+
+        AggregateIndexProperties properties = new AggregateIndexProperties();
+        properties.setEnabled(true);
+        stockAggregateIndex = new StockAggregateIndex(stockRepository, properties);
+        stockAggregateIndex.load();
+    }
+
+    @Test
+    void shouldAnswerFiltersLikeSqlSum() {
+        assertTrue(stockAggregateIndex.isReady());
+        assertEquals(7, stockAggregateIndex.sumQuantity("red", CottonRange.of(null, null, 50)));
+        assertEquals(9, stockAggregateIndex.sumQuantity("red", CottonRange.of(10, null, null)));
+        assertEquals(12, stockAggregateIndex.sumQuantity("red", CottonRange.of(null, 100, null)));
+        assertEquals(7, stockAggregateIndex.sumQuantity("red", CottonRange.of(10, 100, null)));
+        // Товар с нулевым остатком есть - сумма 0, товара нет - null
+        assertEquals(0, stockAggregateIndex.sumQuantity("red", CottonRange.of(null, null, 100)));
+        assertNull(stockAggregateIndex.sumQuantity("red", CottonRange.of(null, null, 11)));
+        assertNull(stockAggregateIndex.sumQuantity("green", CottonRange.of(0, null, null)));
+        assertNull(stockAggregateIndex.sumQuantity("red", CottonRange.of(10, 11, null)));
+    }
+
+    @Test
+    void histogramShouldSkipZeroQuantitiesAndKeepOutliers() {
+        assertEquals(new TreeMap<>(Map.of(10, 5, 50, 7, 150, 2)), stockAggregateIndex.histogram("red"));
+        assertEquals(Map.of(50, 11), stockAggregateIndex.histogram("blue"));
+        assertTrue(stockAggregateIndex.histogram("green").isEmpty());
+    }
+
+    @Test
+    void shouldApplyCommittedChanges() {
+        stockAggregateIndex.onStockChanged(new StockChangedEvent(Map.of(
+                new SockKey("red", 50), -3,
+                new SockKey("green", 20), 4)));
+
+        assertEquals(4, stockAggregateIndex.sumQuantity("red", CottonRange.of(null, null, 50)));
+        assertEquals(4, stockAggregateIndex.sumQuantity("green", CottonRange.of(null, 21, null)));
+    }
+
+    @Test
+    void shouldMoveQuantityWhenSockIsUpdated() {
+        stockAggregateIndex.onSockUpdated(new SockUpdatedEvent(new SockKey("red", 150), new SockKey("blue", 60)));
+
+        assertEquals(13, stockAggregateIndex.sumQuantity("blue", CottonRange.of(49, null, null)));
+        assertEquals(12, stockAggregateIndex.sumQuantity("red", CottonRange.of(0, null, null)));
+    }
+
+    @Test
+    void shouldReportDivergenceFromDatabase() {
+        assertTrue(stockAggregateIndex.checkConsistency().isEmpty());
+
+        database.set(0, new Object[]{"red", 10, 6});
+        database.add(new Object[]{"red", 120, 1});
+
+        List<String> mismatches = stockAggregateIndex.checkConsistency();
+        assertEquals(2, mismatches.size());
+        assertTrue(mismatches.contains("red/10: индекс 5, БД 6"));
+        assertTrue(mismatches.contains("red/>100: индекс 2, БД 3"));
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dto.ExportFormat;
+import org.example.dto.SockKey;
+import org.example.exception.BusinessLogicException;
+import org.example.repositories.StockRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Выгрузка идет по всей БД, поэтому проверяются только строки своего цвета
+@SpringBootTest
+class StockExportServiceTest {
+
+    @Autowired
+    private StockExportService stockExportService;
+    @Autowired
+    private StockImportService stockImportService;
+    @Autowired
+    private StockRepository stockRepository;
+    @Autowired
+    private MovementStreamService movementStreamService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final String color = "export-" + UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM sock_entity WHERE color_id IN (SELECT id FROM color WHERE name LIKE ?)", color + "%");
+    }
+
+    @Test
+    void csvExportShouldRoundTripThroughBatchImport() throws Exception {
+        Map<SockKey, Integer> stock = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            stock.put(new SockKey(color + "-" + i / 100, i % 100), i + 1);
+        }
+        stockRepository.addQuantities(stock);
+        stockExportService.checkExportable(ExportFormat.CSV);
+
+        String csv = exportOwnLines(ExportFormat.CSV);
+        assertEquals(300, csv.lines().count());
+        assertTrue(csv.contains(color + "-2,99,300\n"));
+        Map<String, Integer> exported = stockOf();
+
+        tearDown();
+        MockMultipartFile file = new MockMultipartFile("file", "stock.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8));
+        assertEquals(300, stockImportService.importCsv(file));
+        assertEquals(exported, stockOf());
+    }
+
+    @Test
+    void csvExportShouldRefuseColorsItCannotCarry() {
+        stockRepository.addQuantities(Map.of(new SockKey(color + ",comma", 10), 5, new SockKey(color + "\nline", 20), 1));
+
+        // Отказ до начала ответа, ndjson выгружает такие цвета
+        assertThrows(BusinessLogicException.class, () -> stockExportService.checkExportable(ExportFormat.CSV));
+        stockExportService.checkExportable(ExportFormat.NDJSON);
+        // Цвет появился уже после проверки - выгрузка обрывается, а не пропускает товар
+        RuntimeException aborted = assertThrows(RuntimeException.class,
+                () -> stockExportService.export(ExportFormat.CSV, new ByteArrayOutputStream()));
+        assertTrue(aborted.getMessage().contains("format=ndjson"), aborted.getMessage());
+    }
+
+    @Test
+    void ndjsonExportShouldKeepAnyColor() throws Exception {
+        stockRepository.addQuantities(Map.of(new SockKey(color + ",comma\"quote", 10), 5, new SockKey(color, 20), 0));
+
+        List<String> lines = exportOwnLines(ExportFormat.NDJSON).lines().toList();
+
+        // Товар без остатка не выгружается
+        assertEquals(1, lines.size());
+        JsonNode node = objectMapper.readTree(lines.get(0));
+        assertEquals(color + ",comma\"quote", node.get("color").asText());
+        assertEquals(10, node.get("cottonPercentage").asInt());
+        assertEquals(5, node.get("quantity").asInt());
+    }
+
+    @Test
+    void ndjsonExportShouldRoundTripThroughMovements() throws Exception {
+        Map<SockKey, Integer> stock = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            stock.put(new SockKey(color + "-" + i / 100, i % 100), i % 10);
+        }
+        stockRepository.addQuantities(stock);
+        String ndjson = exportOwnLines(ExportFormat.NDJSON);
+        Map<String, Integer> exported = stockOf();
+        exported.values().removeIf(quantity -> quantity == 0);
+
+        tearDown();
+        ByteArrayOutputStream acks = new ByteArrayOutputStream();
+        movementStreamService.process(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), acks);
+
+        for (String ack : acks.toString(StandardCharsets.UTF_8).lines().toList()) {
+            JsonNode node = objectMapper.readTree(ack);
+            assertTrue(node.get("rejected").isEmpty(), ack);
+            assertTrue(node.get("error") == null || node.get("error").isNull(), ack);
+        }
+        assertEquals(exported, stockOf());
+    }
+
+    private String exportOwnLines(ExportFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = stockExportService.export(format, out);
+        String prefix = format == ExportFormat.CSV ? color : "{\"color\":\"" + color;
+        StringBuilder own = new StringBuilder();
+        out.toString(StandardCharsets.UTF_8).lines()
+                .filter(line -> line.startsWith(prefix))
+                .forEach(line -> own.append(line).append('\n'));
+        assertEquals(rows, out.toString(StandardCharsets.UTF_8).lines().count());
+        return own.toString();
+    }
+
+    private Map<String, Integer> stockOf() {
+        Map<String, Integer> stock = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT c.name, s.cotton_percentage, s.quantity FROM sock_entity s JOIN color c ON c.id = s.color_id
+                WHERE c.name LIKE ?
+                """, rs -> {
+            stock.put(rs.getString(1) + "/" + rs.getInt(2), rs.getInt(3));
+        }, color + "%");
+        return stock;
+    }
+}
@@ -0,0 +1,225 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.config.ImportProperties;
+import org.example.dto.ImportErrorDto;
+import org.example.dto.ImportMode;
+import org.example.dto.ImportReportDto;
+import org.example.dto.StockChunk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockImportServiceTest {
+
+    @Mock
+    private StockService stockService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ImportProperties importProperties = new ImportProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ExecutorService executor;
+    private ForkJoinPool parserPool;
+    private StockImportService stockImportService;
+
+    @BeforeEach
+    void setUp() {
+        importProperties.setChunkSize(2);
+        importProperties.setQueueCapacity(1);
+        executor = Executors.newSingleThreadExecutor();
+        parserPool = new ForkJoinPool(2);
+        stockImportService = new StockImportService(new CsvParserService(CsvParserServiceTest.keepColors()), stockService, importProperties,
+                transactionManager, new ConcurrentTaskExecutor(executor), new ParallelCsvParserService(parserPool),
+                meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        parserPool.shutdownNow();
+    }
+
+    @Test
+    void shouldWriteEachChunkSeparately() throws Exception {
+        MultipartFile file = csvFile("Red,50,10\nBlue,30,20\nGreen,40,30\nBlack,10,5\nWhite,0,1");
+
+        long rows = stockImportService.importCsv(file);
+
+        assertEquals(5, rows);
+        ArgumentCaptor<StockChunk> captor = ArgumentCaptor.forClass(StockChunk.class);
+        verify(stockService, times(3)).addedStock(captor.capture());
+        assertEquals(List.of(2, 2, 1), captor.getAllValues().stream().map(StockChunk::size).toList());
+        verifyNoInteractions(transactionManager);
+        assertEquals(1, meterRegistry.summary("socks.import.rows", "parse", "stream").count());
+        assertEquals(5, meterRegistry.summary("socks.import.rows", "parse", "stream").totalAmount());
+    }
+
+    @Test
+    void shouldApplyWholeFileInOneTransaction() throws Exception {
+        importProperties.setCommitMode(ImportProperties.CommitMode.FILE);
+        MultipartFile file = csvFile("Red,50,10\nBlue,30,20\nGreen,40,30");
+
+        long rows = stockImportService.importCsv(file);
+
+        assertEquals(3, rows);
+        verify(stockService, times(2)).addedStock(any(StockChunk.class));
+        verify(transactionManager).commit(any());
+        verify(transactionManager, never()).rollback(any());
+    }
+
+    @Test
+    void shouldRollbackWholeFileWhenLineIsInvalid() {
+        importProperties.setCommitMode(ImportProperties.CommitMode.FILE);
+        MultipartFile file = csvFile("Red,50,10\nBlue,30,20\nGreen,abc,30");
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> stockImportService.importCsv(file));
+
+        assertTrue(exception.getMessage().contains("Позиция : Green,abc,30"));
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
+
+    @Test
+    void shouldKeepChunkModeOffBulkWriteAboveThreshold() throws Exception {
+        importProperties.setBulkThresholdRows(3);
+        MultipartFile file = csvFile("Red,50,10\nBlue,30,20\nGreen,40,30\nBlack,10,5\nWhite,0,1\nGray,20,2\nPink,60,3");
+
+        long rows = stockImportService.importCsv(file);
+
+        assertEquals(7, rows);
+        // Каждая порция своей транзакцией addedStock, массовая запись только для commit-mode file
+        verify(stockService, times(4)).addedStock(any(StockChunk.class));
+        verify(stockService, never()).addedStockBulk(any());
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void shouldBulkWriteRestOfFileInFileTransaction() throws Exception {
+        importProperties.setBulkThresholdRows(3);
+        importProperties.setCommitMode(ImportProperties.CommitMode.FILE);
+        List<List<Integer>> bulkWrites = recordBulkWrites();
+        MultipartFile file = csvFile("Red,50,10\nBlue,30,20\nGreen,40,30\nBlack,10,5\nWhite,0,1\nGray,20,2\nPink,60,3");
+
+        long rows = stockImportService.importCsv(file);
+
+        assertEquals(7, rows);
+        verify(stockService, times(2)).addedStock(any(StockChunk.class));
+        assertEquals(List.of(List.of(2, 1)), bulkWrites);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void shouldKeepWrittenChunksWhenParseFailsInChunkMode() {
+        MultipartFile file = csvFile("Red,50,10\nBlue,30,20\nGreen,abc,30");
+
+        assertThrows(IllegalArgumentException.class, () -> stockImportService.importCsv(file));
+
+        // Порция записывается, не дожидаясь конца разбора
+        verify(stockService).addedStock(any(StockChunk.class));
+        verify(stockService, never()).addedStockBulk(any());
+    }
+
+    // Размеры порций каждого вызова addedStockBulk
+    private List<List<Integer>> recordBulkWrites() {
+        List<List<Integer>> bulkWrites = new ArrayList<>();
+        when(stockService.addedStockBulk(any())).thenAnswer(invocation -> {
+            Supplier<StockChunk> chunks = invocation.getArgument(0);
+            List<Integer> sizes = new ArrayList<>();
+            StockChunk chunk;
+            while ((chunk = chunks.get()) != null) {
+                sizes.add(chunk.size());
+            }
+            bulkWrites.add(sizes);
+            return (long) sizes.stream().mapToInt(Integer::intValue).sum();
+        });
+        return bulkWrites;
+    }
+
+    @Test
+    void shouldApplyAggregatedQuantitiesInParallelMode() throws Exception {
+        importProperties.setParseMode(ImportProperties.ParseMode.PARALLEL);
+        MultipartFile file = csvFile("Red,50,10\nBlue,30,20\nRed,50,5\nGreen,40,30\nBlue,30,1");
+
+        long rows = stockImportService.importCsv(file);
+
+        assertEquals(5, rows);
+        ArgumentCaptor<StockChunk> captor = ArgumentCaptor.forClass(StockChunk.class);
+        verify(stockService, times(2)).addedStock(captor.capture());
+        Map<String, Integer> applied = new HashMap<>();
+        for (StockChunk chunk : captor.getAllValues()) {
+            for (int i = 0; i < chunk.size(); i++) {
+                applied.put(chunk.getColor(i) + "/" + chunk.getCottonPercentage(i), chunk.getQuantity(i));
+            }
+        }
+        assertEquals(Map.of("Red/50", 15, "Blue/30", 21, "Green/40", 30), applied);
+    }
+
+    @Test
+    void shouldNotApplyAnythingWhenParallelParseFails() {
+        importProperties.setParseMode(ImportProperties.ParseMode.PARALLEL);
+        MultipartFile file = csvFile("Red,50,10\nBlue,30,20\nGreen,abc,30");
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> stockImportService.importCsv(file));
+
+        assertEquals("Строка 3. Позиция : Green,abc,30", exception.getMessage());
+        verifyNoInteractions(stockService);
+    }
+
+    @Test
+    void shouldValidateWholeFileWithoutWriting() throws Exception {
+        importProperties.setMaxReportedErrors(2);
+        MultipartFile file = csvFile("Red,50,10\nBlue,x,20\nGreen,40\nBlack,10,5\nWhite,,1");
+
+        ImportReportDto report = stockImportService.importCsv(file, ImportMode.VALIDATE);
+
+        assertEquals(5, report.getRowsTotal());
+        assertEquals(2, report.getRowsValid());
+        assertEquals(3, report.getRowsInvalid());
+        assertEquals(0, report.getRowsApplied());
+        assertEquals(List.of(2L, 3L), report.getErrors().stream().map(ImportErrorDto::getLine).toList());
+        assertTrue(report.isErrorsTruncated());
+        verifyNoInteractions(stockService);
+    }
+
+    @Test
+    void shouldApplyOnlyValidRows() throws Exception {
+        MultipartFile file = csvFile("Red,50,10\nBlue,x,20\nGreen,40,30\nBlack,10,5");
+
+        ImportReportDto report = stockImportService.importCsv(file, ImportMode.APPLY_VALID);
+
+        assertEquals(3, report.getRowsApplied());
+        assertEquals(1, report.getRowsInvalid());
+        assertFalse(report.isErrorsTruncated());
+        ArgumentCaptor<StockChunk> captor = ArgumentCaptor.forClass(StockChunk.class);
+        verify(stockService, times(2)).addedStock(captor.capture());
+        assertEquals("Green", captor.getAllValues().get(0).getColor(1));
+        assertEquals("Black", captor.getAllValues().get(1).getColor(0));
+    }
+
+    private static MultipartFile csvFile(String content) {
+        return new MockMultipartFile("file.csv", "file.csv", "text/csv", content.getBytes());
+    }
+}
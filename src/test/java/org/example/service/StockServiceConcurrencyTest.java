@@ -0,0 +1,155 @@
+package org.example.service;
+
+import org.example.config.QuantityCacheProperties;
+import org.example.dto.SockDto;
+import org.example.dto.SockKey;
+import org.example.dto.StockDto;
+import org.example.dto.StockMovement;
+import org.example.dto.UpdateSockDto;
+import org.example.exception.InsufficientStockException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Списание на реальной БД: 200 одновременных запросов не должны продать больше, чем есть на складе
+@SpringBootTest
+class StockServiceConcurrencyTest {
+
+    private static final int CALLERS = 200;
+    private static final int INITIAL_QUANTITY = 120;
+
+    @Autowired
+    private StockService stockService;
+    @Autowired
+    private SockService sockService;
+    @Autowired
+    private QuantityCacheProperties quantityCacheProperties;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String color = "concurrency-" + UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM sock_entity WHERE color_id = (SELECT id FROM color WHERE name = ?)", color);
+    }
+
+    @Test
+    void concurrentOutcomeShouldNeverOversell() throws Exception {
+        stockService.addedStock(List.of(stockDto(color, 50, INITIAL_QUANTITY)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    stockService.removeStock(List.of(stockDto(color, 50, 1)));
+                    return true;
+                } catch (InsufficientStockException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int sold = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(60, TimeUnit.SECONDS)) {
+                sold++;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(INITIAL_QUANTITY, sold);
+        assertEquals(0, stockService.getSocksQuantity(color, null, null, 50));
+    }
+
+    @Test
+    void incomeOverflowingQuantityShouldBeRejectedWholeBatch() {
+        stockService.addedStock(List.of(stockDto(color, 50, Integer.MAX_VALUE - 5)));
+
+        ArithmeticException e = assertThrows(ArithmeticException.class,
+                () -> stockService.addedStock(List.of(stockDto(color, 10, 1), stockDto(color, 50, 10))));
+
+        assertEquals("Остаток товара носки: " + color + "/50 превысил бы " + Integer.MAX_VALUE, e.getMessage());
+        assertEquals(Integer.MAX_VALUE - 5, stockService.getSocksQuantity(color, null, null, 50));
+        assertNull(stockService.getSocksQuantity(color, null, null, 10));
+    }
+
+    @Test
+    void multiLineOutcomeShouldBeAllOrNothing() {
+        stockService.addedStock(List.of(stockDto(color, 10, 5), stockDto(color, 20, 1)));
+
+        assertThrows(InsufficientStockException.class, () ->
+                stockService.removeStock(List.of(stockDto(color, 10, 5), stockDto(color, 20, 2))));
+        assertEquals(5, stockService.getSocksQuantity(color, null, null, 10));
+
+        stockService.removeStock(List.of(stockDto(color, 10, 3), stockDto(color, 20, 1), stockDto(color, 10, 2)));
+        assertEquals(0, stockService.getSocksQuantity(color, null, 100, null));
+    }
+
+    @Test
+    void cachedQuantityShouldFollowEveryAcknowledgedWrite() {
+        // Кеш по умолчанию выключен, здесь включается на время теста
+        quantityCacheProperties.setEnabled(true);
+        try {
+            stockService.addedStock(List.of(stockDto(color, 10, 5)));
+            assertEquals(5, stockService.getSocksQuantity(color, null, null, 10));
+
+            stockService.addedStock(List.of(stockDto(color, 10, 2)));
+            assertEquals(7, stockService.getSocksQuantity(color, null, null, 10));
+
+            stockService.removeStock(List.of(stockDto(color, 10, 3)));
+            assertEquals(4, stockService.getSocksQuantity(color, null, null, 10));
+
+            Long id = jdbcTemplate.queryForObject(
+                    "SELECT s.id FROM sock_entity s JOIN color c ON c.id = s.color_id WHERE c.name = ?", Long.class, color);
+            UpdateSockDto update = new UpdateSockDto();
+            update.setColor(color);
+            update.setCottonPercentage(20);
+            sockService.updateSockEntity(id, update);
+            assertNull(stockService.getSocksQuantity(color, null, null, 10));
+            assertEquals(4, stockService.getSocksQuantity(color, null, null, 20));
+        } finally {
+            quantityCacheProperties.setEnabled(false);
+        }
+    }
+
+    @Test
+    void netZeroMovementsShouldLeaveSockWithZeroStock() {
+        List<RuntimeException> rejections = stockService.applyMovements(List.of(
+                new StockMovement(new SockKey(color, 10), 5),
+                new StockMovement(new SockKey(color, 10), -5)));
+
+        assertEquals(Arrays.asList(null, null), rejections);
+        // Как после двух отдельных запросов: товар есть, остаток 0
+        assertEquals(0, stockService.getSocksQuantity(color, null, null, 10));
+        assertThrows(InsufficientStockException.class, () -> stockService.removeStock(List.of(stockDto(color, 10, 1))));
+    }
+
+    private static StockDto stockDto(String color, int cottonPercentage, int quantity) {
+        SockDto sockDto = new SockDto();
+        sockDto.setColor(color);
+        sockDto.setCottonPercentage(cottonPercentage);
+        StockDto stockDto = new StockDto();
+        stockDto.setSockDto(sockDto);
+        stockDto.setQuantity(quantity);
+        return stockDto;
+    }
+}
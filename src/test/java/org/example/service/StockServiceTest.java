@@ -1,25 +1,48 @@
 package org.example.service;
 
+import org.example.dto.CottonRange;
+import org.example.dto.QuantityFilterDto;
 import org.example.dto.SockDto;
+import org.example.dto.SockKey;
+import org.example.dto.StockChunk;
 import org.example.dto.StockDto;
+import org.example.dto.StockFilter;
+import org.example.dto.StockMovement;
 import org.example.entity.SockEntity;
-import org.example.entity.StockEntity;
+import org.example.exception.BusinessLogicException;
+import org.example.exception.InsufficientStockException;
 import org.example.exception.NotFoundProductException;
+import org.example.repositories.ColorDictionary;
+import org.example.repositories.StockBulkWriter;
 import org.example.repositories.StockRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,12 +54,53 @@ class StockServiceTest {
     @Mock
     private SockService sockService;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private StockAggregateIndex stockAggregateIndex;
+
+    @Mock
+    private StockBulkWriter stockBulkWriter;
+
+    @Mock
+    private ColorDictionary colorDictionary;
+
+    @Mock
+    private QuantityCache quantityCache;
+
     @InjectMocks
     private StockService stockService;
 
+    // Нормализация цвета проверяется в ColorDictionaryTest, здесь цвета остаются как есть
+    @BeforeEach
+    void setUp() {
+        lenient().when(colorDictionary.normalize(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void bulkWriteShouldAbortSessionWhenSourceFails() {
+        StockBulkWriter.Session session = mock(StockBulkWriter.Session.class);
+        when(stockBulkWriter.begin()).thenReturn(session);
+        StockChunk chunk = new StockChunk(1);
+        chunk.add("Blue", 50, 10);
+        List<StockChunk> chunks = new ArrayList<>(List.of(chunk));
+
+        assertThrows(IllegalArgumentException.class, () -> stockService.addedStockBulk(() -> {
+            if (chunks.isEmpty()) {
+                throw new IllegalArgumentException("Строка 2. Позиция : Blue,x,1");
+            }
+            return chunks.remove(0);
+        }));
+
+        verify(session).write(chunk);
+        verify(session).abort();
+        verify(session, never()).finish();
+        verifyNoInteractions(eventPublisher);
+    }
+
     @Test
-    void shouldAddNewStockWhenNotExists() {
-        // Arrange
+    void shouldAddStockWithSingleBulkUpsert() {
         SockDto sockDto = new SockDto();
         sockDto.setColor("Blue");
         sockDto.setCottonPercentage(50);
@@ -44,48 +108,27 @@ class StockServiceTest {
         stockDto.setSockDto(sockDto);
         stockDto.setQuantity(10);
 
-        SockEntity sockEntity = new SockEntity();
-        sockEntity.setId(1L);
-        sockEntity.setColor("Blue");
-        sockEntity.setCottonPercentage(50);
-        StockEntity newStockEntity = new StockEntity();
-        newStockEntity.setSock(sockEntity);
-        newStockEntity.setQuantity(10);
-
-        when(sockService.getSockEntityAndCreate(sockDto)).thenReturn(sockEntity);
-        when(stockRepository.findBySock(sockEntity)).thenReturn(Optional.empty());
-
         stockService.addedStock(List.of(stockDto));
 
-        verify(stockRepository).save(argThat(stockEntity ->
-                stockEntity.getSock().equals(sockEntity) &&
-                        stockEntity.getQuantity() == 10
-        ));
+        verify(stockRepository).addQuantities(Map.of(new SockKey("Blue", 50), 10));
+        verifyNoInteractions(sockService);
     }
 
 
     @Test
-    void shouldCallSockServiceAndRepository() {
-        // Arrange
-        SockDto sockDto = new SockDto();
-        sockDto.setColor("Blue");
-        sockDto.setCottonPercentage(50);
-        StockDto stockDto = new StockDto();
-        stockDto.setSockDto(sockDto);
-        stockDto.setQuantity(300);
-
-        SockEntity sockEntity = new SockEntity();
-        sockEntity.setId(1L);
-        sockEntity.setColor("Blue");
-        sockEntity.setCottonPercentage(50);
+    void shouldFoldDuplicateRowsBeforeUpsert() {
+        StockChunk chunk = new StockChunk(4);
+        chunk.add("Blue", 50, 300);
+        chunk.add("Red", 10, 5);
+        chunk.add("Blue", 50, 200);
+        chunk.add("Blue", 60, 1);
 
-        when(sockService.getSockEntityAndCreate(sockDto)).thenReturn(sockEntity);
-        when(stockRepository.findBySock(sockEntity)).thenReturn(Optional.empty());
+        stockService.addedStock(chunk);
 
-        stockService.addedStock(List.of(stockDto));
-
-        verify(sockService).getSockEntityAndCreate(sockDto);
-        verify(stockRepository).findBySock(sockEntity);
+        verify(stockRepository).addQuantities(Map.of(
+                new SockKey("Blue", 50), 500,
+                new SockKey("Red", 10), 5,
+                new SockKey("Blue", 60), 1));
     }
 
     @Test
@@ -104,7 +147,7 @@ class StockServiceTest {
         sockEntity.setCottonPercentage(50);
 
         when(sockService.getSockEntity(sockDto)).thenReturn(sockEntity);
-        when(stockRepository.findBySock(sockEntity)).thenReturn(Optional.empty());
+        when(stockRepository.findQuantity("Blue", 50)).thenReturn(null);
 
         NotFoundProductException exception = assertThrows(
                 NotFoundProductException.class,
@@ -113,6 +156,157 @@ class StockServiceTest {
         assertTrue(exception.getMessage().contains("с полями Blue/50"));
     }
 
+    @Test
+    void shouldThrowInsufficientStockExceptionWhenDecrementDidNotApply() {
+        StockDto stockDto = stockDto("Blue", 50, 500);
+        SockEntity sockEntity = new SockEntity(1L, "Blue", 50);
+
+        when(stockRepository.decrementQuantity("Blue", 50, 500)).thenReturn(0);
+        when(sockService.getSockEntity(stockDto.getSockDto())).thenReturn(sockEntity);
+        when(stockRepository.findQuantity("Blue", 50)).thenReturn(10);
+
+        InsufficientStockException exception = assertThrows(
+                InsufficientStockException.class,
+                () -> stockService.removeStock(List.of(stockDto))
+        );
+        assertTrue(exception.getMessage().contains("Blue/50 недостаточно"));
+    }
+
+    @Test
+    void shouldRejectWholeBatchWhenOneLineIsShort() {
+        StockDto blue = stockDto("Blue", 50, 5);
+        StockDto red = stockDto("Red", 10, 7);
+        SockEntity redEntity = new SockEntity(2L, "Red", 10);
+
+        when(stockRepository.subtractQuantities(anyMap())).thenReturn(Set.of(new SockKey("Blue", 50)));
+        when(sockService.getSockEntity(red.getSockDto())).thenReturn(redEntity);
+        when(stockRepository.findQuantity("Red", 10)).thenReturn(1);
+
+        InsufficientStockException exception = assertThrows(
+                InsufficientStockException.class,
+                () -> stockService.removeStock(List.of(blue, red))
+        );
+        assertTrue(exception.getMessage().contains("Red/10"));
+        verify(stockRepository, never()).decrementQuantity(anyString(), anyInt(), anyInt());
+    }
 
+    @Test
+    void shouldAnswerFromIndexWhenReady() {
+        when(stockAggregateIndex.isReady()).thenReturn(true);
+        when(stockAggregateIndex.sumQuantity("Blue", new CottonRange(51, 69))).thenReturn(42);
+        when(stockAggregateIndex.sumQuantity("Red", new CottonRange(51, Integer.MAX_VALUE))).thenReturn(null);
+
+        assertEquals(42, stockService.getSocksQuantity("Blue", 50, 70, null));
+        // Нет товаров в диапазоне - null, как у SUM в БД
+        assertNull(stockService.getSocksQuantity("Red", 50, null, null));
+        verifyNoInteractions(stockRepository);
+    }
+
+    @Test
+    void shouldQueryDatabaseThroughCache() {
+        when(quantityCache.get(eq("Blue"), eq(new CottonRange(51, 69)), any())).thenAnswer(invocation ->
+                invocation.<Supplier<Integer>>getArgument(2).get());
+        when(stockRepository.sumQuantityByColorAndCottonPercentageInRange("Blue", 50, 70)).thenReturn(42);
 
-}
\ No newline at end of file
+        assertEquals(42, stockService.getSocksQuantity("Blue", 50, 70, null));
+        // Без фильтра по хлопку кеш не нужен
+        assertEquals(0, stockService.getSocksQuantity("Blue", null, null, null));
+        verify(quantityCache, times(1)).get(anyString(), any(), any());
+    }
+
+    @Test
+    void quantitiesShouldKeepFilterOrderAndSkipFiltersWithoutCottonRange() {
+        when(stockAggregateIndex.isReady()).thenReturn(false);
+        when(stockRepository.sumQuantities(List.of(
+                new StockFilter("Red", new CottonRange(51, Integer.MAX_VALUE)),
+                new StockFilter("Blue", new CottonRange(10, 10))))).thenReturn(Arrays.asList(null, 7));
+
+        List<Integer> quantities = stockService.getSocksQuantities(List.of(
+                new QuantityFilterDto("Red", 50, null, null),
+                new QuantityFilterDto("Green", null, null, null),
+                new QuantityFilterDto("Blue", null, null, 10)));
+
+        assertEquals(Arrays.asList(null, 0, 7), quantities);
+        verify(stockRepository, times(1)).sumQuantities(anyList());
+    }
+
+    @Test
+    void quantitiesShouldRejectInvertedRangeBeforeQuerying() {
+        List<QuantityFilterDto> filters = List.of(
+                new QuantityFilterDto("Red", null, null, 10),
+                new QuantityFilterDto("Red", 50, 20, null));
+
+        BusinessLogicException exception = assertThrows(BusinessLogicException.class,
+                () -> stockService.getSocksQuantities(filters));
+        assertTrue(exception.getMessage().startsWith("фильтр 2"));
+        verifyNoInteractions(stockRepository);
+    }
+
+    @Test
+    void histogramShouldComeFromSingleQueryWhenIndexIsOff() {
+        when(stockAggregateIndex.isReady()).thenReturn(false);
+        when(stockRepository.cottonHistogram(List.of("Red", "Blue", "Green")))
+                .thenReturn(Map.of("Red", new TreeMap<>(Map.of(10, 5, 50, 7)), "Blue", new TreeMap<>(Map.of(50, 11))));
+
+        Map<String, SortedMap<Integer, Integer>> histograms = stockService.getCottonHistogram(List.of("Red", "Blue", "Green"));
+
+        // Порядок цветов как в запросе, цвет без остатков - пустая гистограмма
+        assertEquals(List.of("Red", "Blue", "Green"), new ArrayList<>(histograms.keySet()));
+        assertEquals(Map.of(10, 5, 50, 7), histograms.get("Red"));
+        assertTrue(histograms.get("Green").isEmpty());
+        verify(stockRepository, times(1)).cottonHistogram(anyList());
+        verify(stockAggregateIndex, never()).histogram(anyString());
+    }
+
+    @Test
+    void shouldReplayMovementsInArrivalOrderAndApplyNetDelta() {
+        SockKey blue = new SockKey("Blue", 50);
+        SockKey red = new SockKey("Red", 10);
+        when(stockRepository.lockQuantities(Set.of(blue, red))).thenReturn(new HashMap<>(Map.of(blue, 5)));
+        when(sockService.getSockEntity(any(SockDto.class))).thenReturn(new SockEntity(2L, "Red", 10));
+        when(stockRepository.findQuantity("Red", 10)).thenReturn(null);
+
+        List<RuntimeException> rejections = stockService.applyMovements(List.of(
+                new StockMovement(blue, -4),
+                new StockMovement(blue, -2),
+                new StockMovement(red, -1),
+                new StockMovement(red, 3),
+                new StockMovement(blue, 10),
+                new StockMovement(red, -1)));
+
+        assertNull(rejections.get(0));
+        assertInstanceOf(InsufficientStockException.class, rejections.get(1));
+        assertInstanceOf(NotFoundProductException.class, rejections.get(2));
+        assertNull(rejections.get(3));
+        assertNull(rejections.get(4));
+        assertNull(rejections.get(5));
+        verify(stockRepository).addQuantities(Map.of(blue, 6, red, 2));
+    }
+
+    @Test
+    void zeroNetDeltaShouldStillCreateNewSock() {
+        SockKey blue = new SockKey("Blue", 50);
+        SockKey red = new SockKey("Red", 10);
+        when(stockRepository.lockQuantities(Set.of(blue, red))).thenReturn(new HashMap<>(Map.of(blue, 5)));
+
+        List<RuntimeException> rejections = stockService.applyMovements(List.of(
+                new StockMovement(blue, 3),
+                new StockMovement(red, 5),
+                new StockMovement(blue, -3),
+                new StockMovement(red, -5)));
+
+        rejections.forEach(Assertions::assertNull);
+        // У существующего товара ничего не изменилось, новый создается с остатком 0
+        verify(stockRepository).addQuantities(Map.of(red, 0));
+    }
+
+    private static StockDto stockDto(String color, int cottonPercentage, int quantity) {
+        SockDto sockDto = new SockDto();
+        sockDto.setColor(color);
+        sockDto.setCottonPercentage(cottonPercentage);
+        StockDto stockDto = new StockDto();
+        stockDto.setSockDto(sockDto);
+        stockDto.setQuantity(quantity);
+        return stockDto;
+    }
+}
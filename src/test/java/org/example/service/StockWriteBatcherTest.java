@@ -0,0 +1,152 @@
+package org.example.service;
+
+import org.example.config.GroupCommitProperties;
+import org.example.dto.SearchStockDto;
+import org.example.dto.SockKey;
+import org.example.dto.StockMovement;
+import org.example.exception.InsufficientStockException;
+import org.example.exception.NotFoundProductException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+// Групповая фиксация на реальной БД: пачки не должны менять результат отдельного запроса
+@SpringBootTest(properties = "socks.group-commit.enabled=true")
+class StockWriteBatcherTest {
+
+    private static final int CALLERS = 200;
+    private static final int INITIAL_QUANTITY = 120;
+
+    @Autowired
+    private StockWriteBatcher stockWriteBatcher;
+    @Autowired
+    private StockService stockService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String color = "group-commit-" + UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM sock_entity WHERE color_id = (SELECT id FROM color WHERE name = ?)", color);
+    }
+
+    @Test
+    void concurrentOutcomeShouldRejectOnlyCallersBeyondStock() throws Exception {
+        stockWriteBatcher.income(new SearchStockDto(color, 50, INITIAL_QUANTITY));
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    stockWriteBatcher.outcome(new SearchStockDto(color, 50, 1));
+                    return true;
+                } catch (InsufficientStockException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int sold = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(60, TimeUnit.SECONDS)) {
+                sold++;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(INITIAL_QUANTITY, sold);
+        assertEquals(0, stockService.getSocksQuantity(color, null, null, 50));
+    }
+
+    @Test
+    void unknownProductShouldFailOnlyItsCaller() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?> unknown = executor.submit(() -> {
+            start.await();
+            stockWriteBatcher.outcome(new SearchStockDto(color, 99, 1));
+            return null;
+        });
+        Future<?> first = executor.submit(() -> {
+            start.await();
+            stockWriteBatcher.income(new SearchStockDto(color, 10, 7));
+            return null;
+        });
+        Future<?> second = executor.submit(() -> {
+            start.await();
+            stockWriteBatcher.income(new SearchStockDto(color, 10, 3));
+            return null;
+        });
+        start.countDown();
+
+        first.get(60, TimeUnit.SECONDS);
+        second.get(60, TimeUnit.SECONDS);
+        Exception e = assertThrows(Exception.class, () -> unknown.get(60, TimeUnit.SECONDS));
+        assertInstanceOf(NotFoundProductException.class, e.getCause());
+        executor.shutdown();
+
+        assertEquals(10, stockService.getSocksQuantity(color, null, null, 10));
+    }
+
+    @Test
+    void callerShouldNotWaitForeverBehindStuckBatch() throws Exception {
+        GroupCommitProperties properties = new GroupCommitProperties();
+        properties.setEnabled(true);
+        properties.setMaxBatchSize(1);
+        properties.setStatementTimeout(Duration.ofSeconds(1));
+        StockService service = mock(StockService.class);
+        CountDownLatch applying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(service.applyMovements(anyList())).thenAnswer(invocation -> {
+            applying.countDown();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return Arrays.asList(new RuntimeException[1]);
+        });
+        StockWriteBatcher batcher = new StockWriteBatcher(service, properties, mock(PlatformTransactionManager.class));
+        batcher.start();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> first = executor.submit(() -> batcher.income(new SearchStockDto(color, 10, 1)));
+            assertTrue(applying.await(10, TimeUnit.SECONDS));
+
+            // Поток записи занят первой пачкой, второе движение забирается из очереди по таймауту
+            Exception e = assertThrows(IllegalStateException.class, () -> batcher.income(new SearchStockDto(color, 20, 1)));
+            assertTrue(e.getMessage().contains("не применено"));
+
+            release.countDown();
+            first.get(10, TimeUnit.SECONDS);
+            batcher.stop();
+            verify(service).applyMovements(List.of(new StockMovement(new SockKey(color, 10), 1)));
+            verifyNoMoreInteractions(service);
+
+            assertThrows(IllegalStateException.class, () -> batcher.income(new SearchStockDto(color, 10, 1)));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+}